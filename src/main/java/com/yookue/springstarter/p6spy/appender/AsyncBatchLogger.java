@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.appender;
+
+
+import java.io.Flushable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.Assert;
+import com.p6spy.engine.logging.Category;
+import com.p6spy.engine.spy.P6SpyOptions;
+import com.p6spy.engine.spy.appender.FileLogger;
+import com.p6spy.engine.spy.appender.FormattedLogger;
+import com.p6spy.engine.spy.appender.MessageFormattingStrategy;
+import com.p6spy.engine.spy.appender.P6Logger;
+import com.p6spy.engine.spy.appender.Slf4JLogger;
+import com.yookue.springstarter.p6spy.enumeration.OverflowPolicy;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import com.yookue.springstarter.p6spy.support.LoggingSettings;
+
+
+/**
+ * Appender that hands events over to a background thread, which writes them to the delegate appender in batches
+ * <p>
+ * The raw event fields are captured into a preallocated lock-free ring buffer, so the jdbc calling thread never formats or writes.
+ * Before the properties are set, or after closed, events are written to the delegate directly. The events that are published
+ * while closing are written by whichever of the closing and the publishing thread notices them last, so none is left in the buffer
+ * <p>
+ * Once running, setting the properties again only reconfigures the delegate, the buffer is kept
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.property.P6spyProperties.Async
+ */
+@SuppressWarnings("unused")
+public class AsyncBatchLogger implements PropertiesAwareLogger, AutoCloseable {
+    private static final int STATE_NEW = 0, STATE_RUNNING = 1, STATE_CLOSED = 2;
+    private static final int TYPE_SQL = 0, TYPE_TEXT = 1, TYPE_EXCEPTION = 2;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50L);
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1L);
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5L);
+    private static final String THREAD_NAME = "p6spy-async-appender";    // $NON-NLS-1$
+    private static final Log logger = LogFactory.getLog(AsyncBatchLogger.class);
+
+    private final AtomicInteger state = new AtomicInteger(STATE_NEW);
+    private final AtomicLong producerPosition = new AtomicLong();
+    private final AtomicLong consumerPosition = new AtomicLong();
+    private final LongAdder droppedCount = new LongAdder();
+    private final AtomicBoolean delegateHandoff = new AtomicBoolean();
+    private volatile P6Logger delegate;
+    private volatile Thread consumer;
+    private volatile boolean consumerParked;
+    private volatile boolean abandoned;
+    private Slot[] slots;
+    private int mask;
+    private int batchSize;
+    private OverflowPolicy overflowPolicy;
+    private long shutdownTimeoutMillis;
+
+    @Override
+    public void setProperties(P6spyProperties properties) {
+        P6spyProperties.Async async = properties.getAsync();
+        Class<? extends P6Logger> delegateClass = ObjectUtils.defaultIfNull(async.getDelegate(), Slf4JLogger.class);
+        Assert.isTrue(!AsyncBatchLogger.class.isAssignableFrom(delegateClass), "Delegate of async appender must not be async");
+        if (state.get() != STATE_NEW) {
+            if (delegate instanceof PropertiesAwareLogger aware) {
+                aware.setProperties(properties);
+            }
+            return;
+        }
+        P6Logger appender = createDelegate(delegateClass, properties);
+        if (appender instanceof PropertiesAwareLogger aware) {
+            aware.setProperties(properties);
+        }
+        int capacity = Integer.highestOneBit(Math.max(ObjectUtils.defaultIfNull(async.getBufferSize(), 8192) - 1, 1)) << 1;
+        Slot[] buffer = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            buffer[i] = new Slot(i);
+        }
+        slots = buffer;
+        mask = capacity - 1;
+        batchSize = Math.max(ObjectUtils.defaultIfNull(async.getBatchSize(), 256), 1);
+        overflowPolicy = ObjectUtils.defaultIfNull(async.getOverflowPolicy(), OverflowPolicy.BLOCK);
+        long timeoutMillis = (async.getShutdownTimeout() == null) ? 0L : async.getShutdownTimeout().toMillis();
+        shutdownTimeoutMillis = (timeoutMillis > 0L) ? timeoutMillis : DEFAULT_SHUTDOWN_TIMEOUT_MILLIS;
+        delegate = appender;
+        Thread thread = new Thread(this::consume, THREAD_NAME);
+        thread.setDaemon(true);
+        consumer = thread;
+        if (state.compareAndSet(STATE_NEW, STATE_RUNNING)) {
+            thread.start();
+        }
+    }
+
+    @Override
+    public void logSQL(int connectionId, String now, long elapsed, Category category, String prepared, String sql, String url) {
+        publish(TYPE_SQL, connectionId, now, elapsed, category, prepared, sql, url, null);
+    }
+
+    @Override
+    public void logException(Exception e) {
+        publish(TYPE_EXCEPTION, -1, null, 0L, null, null, null, null, e);
+    }
+
+    @Override
+    public void logText(String text) {
+        publish(TYPE_TEXT, -1, null, 0L, null, null, text, null, null);
+    }
+
+    @Override
+    public boolean isCategoryEnabled(Category category) {
+        return resolveDelegate().isCategoryEnabled(category);
+    }
+
+    /**
+     * Returns whether the delegate applies a changed log file or formatting strategy in place
+     *
+     * @return whether the delegate applies a changed log file or formatting strategy in place
+     */
+    @Override
+    public boolean isOutputReconfigurable() {
+        return delegate instanceof PropertiesAwareLogger aware && aware.isOutputReconfigurable();
+    }
+
+    /**
+     * Returns the number of events that have been discarded by the overflow policy, or left in the buffer by a timed out close
+     *
+     * @return the number of events that have been discarded by the overflow policy, or left in the buffer by a timed out close
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Stops accepting events into the ring buffer, and waits for the buffered events to be drained
+     * <p>
+     * Waits no longer than the shutdown timeout, which falls back to 5 seconds if it is not positive. Once the consumer has
+     * stopped, the events that are left in the buffer are written by the closing thread, and the delegate is closed.
+     * If the consumer is still writing on timeout, it is told to stop, the events that are left are counted as dropped,
+     * and the delegate is closed by the consumer when it exits, never under it
+     */
+    @Override
+    public void close() {
+        int previous = state.getAndSet(STATE_CLOSED);
+        if (previous == STATE_CLOSED) {
+            return;
+        }
+        Thread thread = consumer;
+        if (previous == STATE_RUNNING && thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(shutdownTimeoutMillis);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                abandoned = true;
+                thread.interrupt();
+                long discarded = discardBuffered();
+                if (logger.isWarnEnabled()) {
+                    logger.warn(String.format("Async p6spy appender did not drain within %d ms, dropped %d buffered events", shutdownTimeoutMillis, discarded));    // $NON-NLS-1$
+                }
+                if (delegateHandoff.compareAndSet(false, true)) {
+                    return;
+                }
+            } else {
+                drainIfStopped();
+            }
+        }
+        closeDelegate();
+    }
+
+    @SuppressWarnings("DuplicatedCode")
+    private void publish(int type, int connectionId, String now, long elapsed, Category category, String prepared, String sql, String url, Exception exception) {
+        while (true) {
+            if (state.get() != STATE_RUNNING) {
+                write(resolveDelegate(), type, connectionId, now, elapsed, category, prepared, sql, url, exception);
+                return;
+            }
+            long position = producerPosition.get();
+            Slot slot = slots[(int) (position & mask)];
+            long difference = slot.sequence - position;
+            if (difference == 0L) {
+                if (producerPosition.compareAndSet(position, position + 1L)) {
+                    slot.type = type;
+                    slot.connectionId = connectionId;
+                    slot.now = now;
+                    slot.elapsed = elapsed;
+                    slot.category = category;
+                    slot.prepared = prepared;
+                    slot.sql = sql;
+                    slot.url = url;
+                    slot.exception = exception;
+                    slot.sequence = position + 1L;
+                    if (consumerParked) {
+                        LockSupport.unpark(consumer);
+                    }
+                    if (state.get() == STATE_CLOSED) {
+                        drainIfStopped();
+                    }
+                    return;
+                }
+            } else if (difference < 0L) {
+                switch (overflowPolicy) {
+                    case DROP_NEWEST -> {
+                        droppedCount.increment();
+                        return;
+                    }
+                    case DROP_OLDEST -> {
+                        if (poll(null)) {
+                            droppedCount.increment();
+                        }
+                    }
+                    default -> {
+                        LockSupport.unpark(consumer);
+                        LockSupport.parkNanos(this, FULL_PARK_NANOS);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest event out of the ring buffer
+     * <p>
+     * Besides the consumer, producers take events too when dropping the oldest ones
+     */
+    private boolean poll(Slot target) {
+        while (true) {
+            long position = consumerPosition.get();
+            Slot slot = slots[(int) (position & mask)];
+            long difference = slot.sequence - (position + 1L);
+            if (difference == 0L) {
+                if (consumerPosition.compareAndSet(position, position + 1L)) {
+                    if (target != null) {
+                        target.copyFrom(slot);
+                    }
+                    slot.clear();
+                    slot.sequence = position + mask + 1L;
+                    return true;
+                }
+            } else if (difference < 0L) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Whichever of a timed out close and the exiting consumer comes second closes the delegate
+     */
+    private void consume() {
+        try {
+            consumeEvents();
+        } finally {
+            if (abandoned && !delegateHandoff.compareAndSet(false, true)) {
+                closeDelegate();
+            }
+        }
+    }
+
+    private void consumeEvents() {
+        Slot event = new Slot(0L);
+        long reportedDrops = 0L, reportedTime = System.nanoTime() - REPORT_INTERVAL_NANOS;
+        while (!abandoned) {
+            P6Logger appender = delegate;
+            int count = 0;
+            while (count < batchSize && !abandoned && poll(event)) {
+                write(appender, event.type, event.connectionId, event.now, event.elapsed, event.category, event.prepared, event.sql, event.url, event.exception);
+                event.clear();
+                count++;
+            }
+            if (count > 0) {
+                long drops = droppedCount.sum();
+                if (!abandoned && drops > reportedDrops && System.nanoTime() - reportedTime >= REPORT_INTERVAL_NANOS) {
+                    write(appender, TYPE_TEXT, -1, null, 0L, null, null, String.format("Async p6spy appender dropped %d events in total", drops), null, null);    // $NON-NLS-1$
+                    reportedDrops = drops;
+                    reportedTime = System.nanoTime();
+                }
+                if (appender instanceof Flushable flushable) {
+                    try {
+                        flushable.flush();
+                    } catch (Exception ignored) {
+                    }
+                }
+                continue;
+            }
+            if (producerPosition.get() == consumerPosition.get()) {
+                if (state.get() == STATE_CLOSED) {
+                    return;
+                }
+                consumerParked = true;
+                if (producerPosition.get() == consumerPosition.get() && state.get() == STATE_RUNNING) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                consumerParked = false;
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Writes the events that are left in the buffer, once the consumer will not take them any more
+     */
+    private void drainIfStopped() {
+        if (abandoned) {
+            discardBuffered();
+            return;
+        }
+        Thread thread = consumer;
+        if (thread != null && thread.isAlive()) {
+            return;
+        }
+        P6Logger target = resolveDelegate();
+        Slot event = new Slot(0L);
+        while (poll(event)) {
+            write(target, event.type, event.connectionId, event.now, event.elapsed, event.category, event.prepared, event.sql, event.url, event.exception);
+            event.clear();
+        }
+    }
+
+    /**
+     * Takes the events that are left in the buffer out without writing them, and counts them as dropped
+     */
+    private long discardBuffered() {
+        long discarded = 0L;
+        while (poll(null)) {
+            discarded++;
+        }
+        droppedCount.add(discarded);
+        return discarded;
+    }
+
+    private void closeDelegate() {
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    private void write(P6Logger target, int type, int connectionId, String now, long elapsed, Category category, String prepared, String sql, String url, Exception exception) {
+        try {
+            switch (type) {
+                case TYPE_SQL -> target.logSQL(connectionId, now, elapsed, category, prepared, sql, url);
+                case TYPE_EXCEPTION -> target.logException(exception);
+                default -> target.logText(sql);
+            }
+        } catch (RuntimeException ex) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Async p6spy appender failed to write an event", ex);    // $NON-NLS-1$
+            }
+        }
+    }
+
+    private P6Logger resolveDelegate() {
+        P6Logger appender = delegate;
+        if (appender == null) {
+            appender = createDelegate(Slf4JLogger.class, null);
+            delegate = appender;
+        }
+        return appender;
+    }
+
+    /**
+     * Creates the delegate appender, and configures it as {@link com.p6spy.engine.common.P6LogQuery#initialize()} does
+     * <p>
+     * The log file and the formatting strategy are taken from the properties if present, otherwise from the p6spy options
+     */
+    private P6Logger createDelegate(Class<? extends P6Logger> delegateClass, P6spyProperties properties) {
+        P6Logger appender = BeanUtils.instantiateClass(delegateClass);
+        if (appender instanceof FileLogger fileLogger) {
+            fileLogger.setLogfile((properties == null) ? P6SpyOptions.getActiveInstance().getLogfile() : LoggingSettings.resolveLogFile(properties));
+        }
+        MessageFormattingStrategy strategy = (properties == null || properties.getLogMessageFormat() == null) ? P6SpyOptions.getActiveInstance().getLogMessageFormatInstance() : BeanUtils.instantiateClass(properties.getLogMessageFormat());
+        if (appender instanceof FormattedLogger formattedLogger && strategy != null) {
+            formattedLogger.setStrategy(strategy);
+        }
+        return appender;
+    }
+
+    private static final class Slot {
+        private volatile long sequence;
+        private int type;
+        private int connectionId;
+        private String now;
+        private long elapsed;
+        private Category category;
+        private String prepared;
+        private String sql;
+        private String url;
+        private Exception exception;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        private void copyFrom(Slot slot) {
+            type = slot.type;
+            connectionId = slot.connectionId;
+            now = slot.now;
+            elapsed = slot.elapsed;
+            category = slot.category;
+            prepared = slot.prepared;
+            sql = slot.sql;
+            url = slot.url;
+            exception = slot.exception;
+        }
+
+        private void clear() {
+            now = null;
+            category = null;
+            prepared = null;
+            sql = null;
+            url = null;
+            exception = null;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.appender;
+
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import com.p6spy.engine.logging.Category;
+import com.p6spy.engine.spy.appender.FormattedLogger;
+
+
+/**
+ * Appender that writes to the standard output without holding any monitor
+ * <p>
+ * Each line is encoded before taking a {@link java.util.concurrent.locks.ReentrantLock}, then written with one call to the file
+ * descriptor of the standard output, so a virtual thread that waits for the lock or for the write unmounts from its carrier,
+ * instead of pinning it as {@link com.p6spy.engine.spy.appender.StdoutLogger} may do on a synchronized stream
+ * <p>
+ * The lines bypass {@link java.lang.System#out}, so they are not captured if it is redirected
+ *
+ * @author David Hsing
+ * @see com.p6spy.engine.spy.appender.StdoutLogger
+ */
+@SuppressWarnings("unused")
+public class ConsoleLogger extends FormattedLogger {
+    private static final Log logger = LogFactory.getLog(ConsoleLogger.class);
+    private static final ReentrantLock LOCK = new ReentrantLock();
+    private static final FileOutputStream STDOUT = new FileOutputStream(FileDescriptor.out);
+    private static final Charset CHARSET = resolveCharset();
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(CHARSET);
+
+    @Override
+    public void logText(String text) {
+        byte[] bytes = StringUtils.defaultString(text).getBytes(CHARSET);
+        byte[] line = new byte[bytes.length + LINE_SEPARATOR.length];
+        System.arraycopy(bytes, 0, line, 0, bytes.length);
+        System.arraycopy(LINE_SEPARATOR, 0, line, bytes.length, LINE_SEPARATOR.length);
+        LOCK.lock();
+        try {
+            STDOUT.write(line);
+        } catch (IOException ex) {
+            logger.warn("Console p6spy appender failed to write", ex);    // $NON-NLS-1$
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    @Override
+    public void logException(Exception e) {
+        logText(ExceptionUtils.getStackTrace(e));
+    }
+
+    @Override
+    public boolean isCategoryEnabled(Category category) {
+        return true;
+    }
+
+    private static Charset resolveCharset() {
+        String encoding = System.getProperty("stdout.encoding");    // $NON-NLS-1$
+        try {
+            return StringUtils.isBlank(encoding) ? Charset.defaultCharset() : Charset.forName(encoding);
+        } catch (IllegalArgumentException ex) {
+            return Charset.defaultCharset();
+        }
+    }
+}
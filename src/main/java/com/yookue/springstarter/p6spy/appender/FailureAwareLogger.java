@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.appender;
+
+
+import java.sql.SQLException;
+import com.p6spy.engine.logging.Category;
+import com.p6spy.engine.spy.appender.P6Logger;
+
+
+/**
+ * Appender that is told about the failed statements
+ * <p>
+ * P6spy never hands the exceptions of the statements to appenders, so the logging listener calls this for every failed statement,
+ * before and regardless of the thresholds, the sampling and the filters
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.listener.GatedLoggingEventListener
+ */
+public interface FailureAwareLogger extends P6Logger {
+    /**
+     * Logs a failed statement
+     *
+     * @param connectionId the id of the connection
+     * @param elapsed the elapsed time of the statement in milliseconds
+     * @param category the category of the statement
+     * @param sql the sql of the statement
+     * @param url the url of the connection
+     * @param e the exception of the statement
+     */
+    void logFailure(int connectionId, long elapsed, Category category, String sql, String url, SQLException e);
+}
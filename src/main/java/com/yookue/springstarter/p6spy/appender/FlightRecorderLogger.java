@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.appender;
+
+
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import com.p6spy.engine.logging.Category;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import com.yookue.springstarter.p6spy.support.SqlFingerprintUtils;
+import jdk.jfr.FlightRecorder;
+
+
+/**
+ * Appender that emits each statement as a {@link com.yookue.springstarter.p6spy.appender.FlightRecorderStatementEvent}
+ * <p>
+ * The appender reports the categories as disabled while no recording has enabled the event, so the logging listener skips the
+ * statements before touching them. Thresholds and stack traces are configured in the recording settings, such as
+ * {@code jfr configure com.yookue.p6spy.Statement#elapsedThreshold=20ms}. Texts and exceptions are not recorded
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.property.P6spyProperties.Jfr
+ */
+@SuppressWarnings("unused")
+public class FlightRecorderLogger implements PropertiesAwareLogger {
+    static {
+        FlightRecorder.register(FlightRecorderStatementEvent.class);
+    }
+
+    private volatile boolean includeSql;
+
+    @Override
+    public void setProperties(P6spyProperties properties) {
+        includeSql = BooleanUtils.isTrue(properties.getJfr().getIncludeSql());
+    }
+
+    /**
+     * Returns {@code true}, as the events are written neither to a file nor through a formatting strategy
+     *
+     * @return {@code true}
+     */
+    @Override
+    public boolean isOutputReconfigurable() {
+        return true;
+    }
+
+    @Override
+    public void logSQL(int connectionId, String now, long elapsed, Category category, String prepared, String sql, String url) {
+        FlightRecorderStatementEvent event = new FlightRecorderStatementEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.elapsed = elapsed;
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.connectionId = connectionId;
+        event.category = (category == null) ? null : category.getName();
+        event.fingerprint = StringUtils.isBlank(prepared) ? null : SqlFingerprintUtils.fingerprint(prepared);
+        event.sql = includeSql ? sql : null;
+        event.url = url;
+        event.commit();
+    }
+
+    @Override
+    public void logException(Exception e) {
+    }
+
+    @Override
+    public void logText(String text) {
+    }
+
+    @Override
+    public boolean isCategoryEnabled(Category category) {
+        return new FlightRecorderStatementEvent().isEnabled();
+    }
+}
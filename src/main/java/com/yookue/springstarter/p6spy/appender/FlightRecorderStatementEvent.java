@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.appender;
+
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.StringUtils;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingControl;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+
+/**
+ * Flight recorder event of a JDBC execution observed by p6spy
+ * <p>
+ * The execution has finished when the event is created, so its duration is carried by {@code elapsed}, and the
+ * {@code elapsedThreshold} setting filters on that field, as the built-in {@code threshold} setting does on the duration
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.appender.FlightRecorderLogger
+ */
+@Name(value = FlightRecorderStatementEvent.EVENT_NAME)
+@Label(value = "JDBC Statement")
+@Description(value = "A JDBC execution observed by p6spy")
+@Category(value = {"Java Application", "P6Spy"})
+@StackTrace
+@SuppressWarnings("unused")
+public class FlightRecorderStatementEvent extends Event {
+    public static final String EVENT_NAME = "com.yookue.p6spy.Statement";    // $NON-NLS-1$
+
+    @Label(value = "Connection Id")
+    int connectionId;
+
+    @Label(value = "Category")
+    String category;
+
+    @Label(value = "Elapsed")
+    @Timespan(value = Timespan.MILLISECONDS)
+    long elapsed;
+
+    @Label(value = "Fingerprint")
+    @Description(value = "The statement with literals replaced by placeholders")
+    String fingerprint;
+
+    @Label(value = "SQL")
+    @Description(value = "The statement with the bound values, if enabled")
+    String sql;
+
+    @Label(value = "URL")
+    String url;
+
+    @Name(value = "elapsedThreshold")
+    @Label(value = "Elapsed Threshold")
+    @Description(value = "Record the statements that take at least this time")
+    @SettingDefinition
+    @SuppressWarnings("unused")
+    protected boolean elapsedThreshold(ElapsedThresholdSetting setting) {
+        return elapsed >= setting.getThresholdMillis();
+    }
+
+
+    /**
+     * Setting of the minimum elapsed time, in the same format as the {@code threshold} setting, such as {@code 20 ms}
+     * <p>
+     * When several recordings enable the event, the lowest threshold wins
+     *
+     * @author David Hsing
+     */
+    public static class ElapsedThresholdSetting extends SettingControl {
+        private static final String DEFAULT_VALUE = "0 ms";    // $NON-NLS-1$
+        private static final String INFINITY = "infinity";    // $NON-NLS-1$
+
+        private String value = DEFAULT_VALUE;
+        private volatile long thresholdMillis;
+
+        @Override
+        public String combine(Set<String> values) {
+            String result = null;
+            long lowest = Long.MAX_VALUE;
+            for (String candidate : values) {
+                long millis = parseMillis(candidate);
+                if (result == null || millis < lowest) {
+                    result = candidate;
+                    lowest = millis;
+                }
+            }
+            return (result == null) ? DEFAULT_VALUE : result;
+        }
+
+        @Override
+        public void setValue(String value) {
+            this.value = value;
+            this.thresholdMillis = parseMillis(value);
+        }
+
+        @Override
+        public String getValue() {
+            return value;
+        }
+
+        long getThresholdMillis() {
+            return thresholdMillis;
+        }
+
+        private static long parseMillis(String value) {
+            String text = StringUtils.lowerCase(StringUtils.trimToEmpty(value), Locale.ROOT);
+            if (text.isEmpty()) {
+                return 0L;
+            }
+            if (INFINITY.equals(text)) {
+                return Long.MAX_VALUE;
+            }
+            int index = 0;
+            while (index < text.length() && Character.isDigit(text.charAt(index))) {
+                index++;
+            }
+            if (index == 0) {
+                return 0L;
+            }
+            long amount = Long.parseLong(text.substring(0, index));
+            return switch (text.substring(index).trim()) {
+                case "ns" -> TimeUnit.NANOSECONDS.toMillis(amount);    // $NON-NLS-1$
+                case "us" -> TimeUnit.MICROSECONDS.toMillis(amount);    // $NON-NLS-1$
+                case "s" -> TimeUnit.SECONDS.toMillis(amount);    // $NON-NLS-1$
+                case "m" -> TimeUnit.MINUTES.toMillis(amount);    // $NON-NLS-1$
+                case "h" -> TimeUnit.HOURS.toMillis(amount);    // $NON-NLS-1$
+                case "d" -> TimeUnit.DAYS.toMillis(amount);    // $NON-NLS-1$
+                default -> amount;
+            };
+        }
+    }
+}
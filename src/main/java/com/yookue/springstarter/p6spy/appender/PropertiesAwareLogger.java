@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.appender;
+
+
+import com.p6spy.engine.spy.appender.P6Logger;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+
+
+/**
+ * Appender that is configured from the starter properties
+ * <p>
+ * P6spy instantiates appenders by class name, so the properties are handed over after the appender has been created.
+ * The log file and the formatting strategy are taken from the properties too, rather than from the options of p6spy, which are
+ * not updated by a refresh, and which are not the ones of a data source override
+ *
+ * @author David Hsing
+ */
+public interface PropertiesAwareLogger extends P6Logger {
+    /**
+     * Sets the properties of the starter
+     *
+     * @param properties the properties of the starter
+     */
+    void setProperties(P6spyProperties properties);
+
+    /**
+     * Returns whether a changed log file or formatting strategy is applied by {@link #setProperties(P6spyProperties)} in place
+     * <p>
+     * The appenders that return {@code false} are re-created when either of them changes
+     *
+     * @return whether a changed log file or formatting strategy is applied in place
+     */
+    default boolean isOutputReconfigurable() {
+        return false;
+    }
+}
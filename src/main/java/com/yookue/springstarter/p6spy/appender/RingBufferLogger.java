@@ -0,0 +1,472 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.appender;
+
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.unit.DataSize;
+import com.p6spy.engine.logging.Category;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import lombok.Getter;
+
+
+/**
+ * Appender that keeps the latest events in a fixed-size off-heap ring buffer, and dumps them to a file only when triggered
+ * <p>
+ * Events are encoded as UTF-8 straight into a direct {@link java.nio.ByteBuffer} under a {@link java.util.concurrent.locks.ReentrantLock},
+ * so recording allocates nothing on the heap, and the oldest events are overwritten when the buffer is full. A dump is triggered by a
+ * slow statement, a failed statement, the {@code p6spyring} actuator endpoint, or closing the appender, and is written by a background
+ * thread. The dumps are read by {@link com.yookue.springstarter.p6spy.support.RingBufferDecoder}
+ * <p>
+ * A dump starts with {@link #MAGIC} and {@link #VERSION}, followed by the records. Each record is
+ * <pre><code>
+ * int    length of the record in bytes, including this field
+ * byte   type, {@link #TYPE_SQL}, {@link #TYPE_TEXT} or {@link #TYPE_EXCEPTION}
+ * long   epoch milliseconds of the event
+ * int    connection id
+ * long   elapsed milliseconds
+ * string category
+ * string prepared sql
+ * string sql with the bound values, the text, or the stack trace
+ * string url
+ * </code></pre>
+ * where a string is an int length followed by the UTF-8 bytes
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.property.P6spyProperties.Ring
+ */
+@SuppressWarnings("unused")
+public class RingBufferLogger implements PropertiesAwareLogger, FailureAwareLogger, AutoCloseable {
+    public static final int MAGIC = 0x50365242;
+    public static final byte VERSION = 1;
+    public static final byte TYPE_SQL = 0, TYPE_TEXT = 1, TYPE_EXCEPTION = 2;
+
+    private static final Log logger = LogFactory.getLog(RingBufferLogger.class);
+    private static final Set<RingBufferLogger> INSTANCES = ConcurrentHashMap.newKeySet();
+    private static final String THREAD_NAME = "p6spy-ring-dumper";    // $NON-NLS-1$
+    private static final String FILE_PREFIX = "p6spy-ring-";    // $NON-NLS-1$
+    private static final String FILE_EXTENSION = ".bin";    // $NON-NLS-1$
+    private static final DateTimeFormatter FILE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneId.systemDefault());    // $NON-NLS-1$
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 4 + 8;
+    private static final int STRING_COUNT = 4;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock dumpLock = new ReentrantLock();
+    private final AtomicBoolean dumping = new AtomicBoolean();
+    private final AtomicLong lastDumpMillis = new AtomicLong();
+    private ByteBuffer buffer;
+    private ByteBuffer dumpBuffer;
+    private long mask;
+    private int maxStringChars;
+    private long head;
+    private long tail;
+
+    /**
+     * The number of the events that have been recorded
+     */
+    @Getter
+    private volatile long recordedCount;
+
+    /**
+     * The number of the events that have been overwritten
+     */
+    @Getter
+    private volatile long overwrittenCount;
+
+    /**
+     * The file of the latest dump
+     */
+    @Getter
+    private volatile Path lastDumpPath;
+
+    private volatile Path directory;
+    private volatile long maxAgeMillis;
+    private volatile long slowThresholdMillis;
+    private volatile long minDumpIntervalMillis;
+    private volatile boolean dumpOnFailure;
+    private volatile boolean dumpOnClose;
+    private volatile boolean closed;
+
+    public RingBufferLogger() {
+        applySettings(new P6spyProperties.Ring());
+        INSTANCES.add(this);
+    }
+
+    /**
+     * Applies the ring properties, unless the appender has been closed
+     *
+     * @param properties the properties of the starter
+     */
+    @Override
+    public void setProperties(P6spyProperties properties) {
+        if (!closed) {
+            applySettings(properties.getRing());
+        }
+    }
+
+    /**
+     * Returns {@code true}, as the events are written neither to a file nor through a formatting strategy
+     *
+     * @return {@code true}
+     */
+    @Override
+    public boolean isOutputReconfigurable() {
+        return true;
+    }
+
+    @Override
+    public void logSQL(int connectionId, String now, long elapsed, Category category, String prepared, String sql, String url) {
+        record(TYPE_SQL, connectionId, elapsed, (category == null) ? null : category.getName(), prepared, sql, url);
+        if (slowThresholdMillis > 0L && elapsed >= slowThresholdMillis) {
+            triggerDump("slow");    // $NON-NLS-1$
+        }
+    }
+
+    @Override
+    public void logFailure(int connectionId, long elapsed, Category category, String sql, String url, SQLException e) {
+        record(TYPE_EXCEPTION, connectionId, elapsed, (category == null) ? null : category.getName(), sql, toStackTrace(e), url);
+        if (dumpOnFailure) {
+            triggerDump("failure");    // $NON-NLS-1$
+        }
+    }
+
+    @Override
+    public void logException(Exception e) {
+        record(TYPE_EXCEPTION, -1, 0L, null, null, toStackTrace(e), null);
+    }
+
+    @Override
+    public void logText(String text) {
+        record(TYPE_TEXT, -1, 0L, null, null, text, null);
+    }
+
+    @Override
+    public boolean isCategoryEnabled(Category category) {
+        return true;
+    }
+
+    /**
+     * Returns the number of the bytes that are occupied by the records in the ring buffer
+     *
+     * @return the number of the bytes that are occupied by the records in the ring buffer
+     */
+    public long getUsedBytes() {
+        lock.lock();
+        try {
+            return head - tail;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the capacity of the ring buffer in bytes
+     *
+     * @return the capacity of the ring buffer in bytes
+     */
+    public int getCapacity() {
+        lock.lock();
+        try {
+            return buffer.capacity();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Dumps the records within the max age to a new file in the calling thread
+     *
+     * @param reason the reason of the dump, which becomes a part of the file name
+     *
+     * @return the file of the dump
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public Path dump(String reason) throws IOException {
+        dumpLock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            lastDumpMillis.set(now);
+            ByteBuffer snapshot = snapshot(now - maxAgeMillis);
+            Path target = directory.resolve(FILE_PREFIX + FILE_FORMATTER.format(Instant.ofEpochMilli(now)) + '-' + StringUtils.defaultIfBlank(reason, "manual") + FILE_EXTENSION);    // $NON-NLS-1$
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (snapshot.hasRemaining()) {
+                    channel.write(snapshot);
+                }
+            }
+            lastDumpPath = target;
+            return target;
+        } finally {
+            dumpLock.unlock();
+        }
+    }
+
+    /**
+     * Dumps the records of all the open ring appenders in the calling thread
+     *
+     * @param reason the reason of the dumps, which becomes a part of the file names
+     *
+     * @return the files of the dumps
+     *
+     * @throws IOException if any file cannot be written
+     */
+    public static List<Path> dumpAll(String reason) throws IOException {
+        List<Path> paths = new ArrayList<>(INSTANCES.size());
+        for (RingBufferLogger instance : INSTANCES) {
+            paths.add(instance.dump(reason));
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the open ring appenders
+     *
+     * @return the open ring appenders
+     */
+    public static Set<RingBufferLogger> getInstances() {
+        return Set.copyOf(INSTANCES);
+    }
+
+    /**
+     * Dumps the records if {@code dumpOnClose} is enabled, and stops recording
+     * <p>
+     * A closed appender is no longer dumped by {@link #dumpAll(String)}, and ignores the properties set afterwards
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        INSTANCES.remove(this);
+        if (dumpOnClose && getUsedBytes() > 0L) {
+            try {
+                dump("close");    // $NON-NLS-1$
+            } catch (IOException ex) {
+                logger.warn("Ring p6spy appender failed to dump on close", ex);    // $NON-NLS-1$
+            }
+        }
+    }
+
+    private void applySettings(P6spyProperties.Ring ring) {
+        long capacity = Math.max(ring.getCapacity() == null ? 0L : ring.getCapacity().toBytes(), DataSize.ofKilobytes(64L).toBytes());
+        int size = Math.min(Integer.highestOneBit((int) Math.min(capacity - 1L, Integer.MAX_VALUE >> 1)) << 1, 1 << 30);
+        lock.lock();
+        try {
+            if (buffer == null || buffer.capacity() != size) {
+                buffer = ByteBuffer.allocateDirect(size);
+                dumpBuffer = null;
+                head = 0L;
+                tail = 0L;
+            }
+            mask = size - 1L;
+            maxStringChars = size / (STRING_COUNT * 4 * 3);
+        } finally {
+            lock.unlock();
+        }
+        directory = Paths.get(StringUtils.defaultIfBlank(ring.getDirectory(), ".")).toAbsolutePath().normalize();    // $NON-NLS-1$
+        maxAgeMillis = (ring.getMaxAge() == null || ring.getMaxAge().isZero() || ring.getMaxAge().isNegative()) ? Long.MAX_VALUE : ring.getMaxAge().toMillis();
+        slowThresholdMillis = (ring.getSlowThreshold() == null) ? 0L : Math.max(ring.getSlowThreshold().toMillis(), 0L);
+        minDumpIntervalMillis = (ring.getMinDumpInterval() == null) ? 0L : Math.max(ring.getMinDumpInterval().toMillis(), 0L);
+        dumpOnFailure = BooleanUtils.isTrue(ring.getDumpOnFailure());
+        dumpOnClose = BooleanUtils.isTrue(ring.getDumpOnClose());
+    }
+
+    private void record(byte type, int connectionId, long elapsed, String category, String prepared, String text, String url) {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            long maxLength = HEADER_SIZE + STRING_COUNT * 4L + 3L * (length(category) + length(prepared) + length(text) + length(url));
+            while (head + maxLength - tail > buffer.capacity()) {
+                tail += getInt(tail);
+                overwrittenCount++;
+            }
+            long start = head;
+            long position = start + 4L;
+            position = putByte(position, type);
+            position = putLong(position, now);
+            position = putInt(position, connectionId);
+            position = putLong(position, elapsed);
+            position = putString(position, category);
+            position = putString(position, prepared);
+            position = putString(position, text);
+            position = putString(position, url);
+            putInt(start, (int) (position - start));
+            head = position;
+            recordedCount++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies the records that are not older than the given time, so the file can be written without holding the lock
+     * <p>
+     * The copy is reused by the next dump, which is serialized by the dump lock
+     */
+    private ByteBuffer snapshot(long minMillis) {
+        lock.lock();
+        try {
+            long start = tail;
+            while (start < head && getLong(start + 5L) < minMillis) {
+                start += getInt(start);
+            }
+            int length = (int) (head - start);
+            if (dumpBuffer == null || dumpBuffer.capacity() < buffer.capacity() + 5) {
+                dumpBuffer = ByteBuffer.allocateDirect(buffer.capacity() + 5);
+            }
+            ByteBuffer target = dumpBuffer.clear();
+            target.putInt(MAGIC).put(VERSION);
+            int offset = (int) (start & mask), first = Math.min(length, buffer.capacity() - offset);
+            target.put(buffer.duplicate().position(offset).limit(offset + first));
+            if (first < length) {
+                target.put(buffer.duplicate().position(0).limit(length - first));
+            }
+            return target.flip();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void triggerDump(String reason) {
+        long now = System.currentTimeMillis();
+        if (now - lastDumpMillis.get() < minDumpIntervalMillis || !dumping.compareAndSet(false, true)) {
+            return;
+        }
+        lastDumpMillis.set(now);
+        Thread thread = new Thread(() -> {
+            try {
+                dump(reason);
+            } catch (IOException | RuntimeException ex) {
+                logger.warn("Ring p6spy appender failed to dump", ex);    // $NON-NLS-1$
+            } finally {
+                dumping.set(false);
+            }
+        }, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private int length(String value) {
+        return (value == null) ? 0 : Math.min(value.length(), maxStringChars);
+    }
+
+    private long putString(long position, String value) {
+        long start = position;
+        position += 4L;
+        int length = length(value);
+        for (int i = 0; i < length; i++) {
+            char ch = value.charAt(i);
+            if (ch < 0x80) {
+                position = putByte(position, (byte) ch);
+            } else if (ch < 0x800) {
+                position = putByte(position, (byte) (0xC0 | (ch >> 6)));
+                position = putByte(position, (byte) (0x80 | (ch & 0x3F)));
+            } else if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(ch, value.charAt(++i));
+                position = putByte(position, (byte) (0xF0 | (codePoint >> 18)));
+                position = putByte(position, (byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                position = putByte(position, (byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                position = putByte(position, (byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(ch)) {
+                position = putByte(position, (byte) '?');
+            } else {
+                position = putByte(position, (byte) (0xE0 | (ch >> 12)));
+                position = putByte(position, (byte) (0x80 | ((ch >> 6) & 0x3F)));
+                position = putByte(position, (byte) (0x80 | (ch & 0x3F)));
+            }
+        }
+        putInt(start, (int) (position - start - 4L));
+        return position;
+    }
+
+    private long putByte(long position, byte value) {
+        buffer.put((int) (position & mask), value);
+        return position + 1L;
+    }
+
+    private long putInt(long position, int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            position = putByte(position, (byte) (value >>> shift));
+        }
+        return position;
+    }
+
+    private long putLong(long position, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            position = putByte(position, (byte) (value >>> shift));
+        }
+        return position;
+    }
+
+    private int getInt(long position) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (buffer.get((int) ((position + i) & mask)) & 0xFF);
+        }
+        return value;
+    }
+
+    private long getLong(long position) {
+        long value = 0L;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buffer.get((int) ((position + i) & mask)) & 0xFF);
+        }
+        return value;
+    }
+
+    private static String toStackTrace(Exception e) {
+        if (e == null) {
+            return null;
+        }
+        StringWriter writer = new StringWriter();
+        e.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+}
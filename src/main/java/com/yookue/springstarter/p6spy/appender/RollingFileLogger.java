@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.appender;
+
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeanUtils;
+import com.p6spy.engine.logging.Category;
+import com.p6spy.engine.spy.P6SpyOptions;
+import com.p6spy.engine.spy.appender.FormattedLogger;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import com.yookue.springstarter.p6spy.support.LoggingSettings;
+
+
+/**
+ * Appender that writes to a file through a {@link java.nio.channels.FileChannel}, with rolling by size and time
+ * <p>
+ * Lines are encoded into a direct buffer, which is written to the channel when it is full, periodically, or by the last writer
+ * of a group of concurrent writers when {@code autoFlush} is enabled. Rolled files are compressed with gzip on a background thread
+ * of their own, apart from the periodic flush
+ * <p>
+ * Rolled files are named {@code base-yyyyMMdd-HHmmss[.N]ext[.gz]}, only the files of this exact pattern are purged, the oldest
+ * by their timestamps and indexes first
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.property.P6spyProperties.RollingFile
+ */
+@SuppressWarnings("unused")
+public class RollingFileLogger extends FormattedLogger implements PropertiesAwareLogger, Flushable, AutoCloseable {
+    private static final String THREAD_NAME = "p6spy-file-appender";    // $NON-NLS-1$
+    private static final String ARCHIVER_THREAD_NAME = "p6spy-file-archiver";    // $NON-NLS-1$
+    private static final String GZIP_EXTENSION = ".gz";    // $NON-NLS-1$
+    private static final int MIN_BUFFER_SIZE = 8192;
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+    private static final Log logger = LogFactory.getLog(RollingFileLogger.class);
+    private static final DateTimeFormatter ROLLED_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneId.systemDefault());    // $NON-NLS-1$
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private Path path;
+    private ByteBuffer buffer;
+    private int bufferSize;
+    private FileChannel channel;
+    private long channelSize;
+    private long openedMillis;
+    private long nextRollMillis;
+    private long maxFileSize;
+    private long rollingIntervalMillis;
+    private long flushIntervalMillis;
+    private int maxHistory;
+    private boolean compress;
+    private boolean autoFlush;
+    private long shutdownTimeoutMillis;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> flushTask;
+    private ExecutorService archiver;
+
+    public RollingFileLogger() {
+        applySettings(new P6spyProperties.RollingFile(), false);
+    }
+
+    @Override
+    public void setProperties(P6spyProperties properties) {
+        lock.lock();
+        try {
+            closeChannel();
+            path = Paths.get(LoggingSettings.resolveLogFile(properties)).toAbsolutePath().normalize();
+            if (properties.getLogMessageFormat() != null) {
+                setStrategy(BeanUtils.instantiateClass(properties.getLogMessageFormat()));
+            }
+            applySettings(properties.getRollingFile(), BooleanUtils.isTrue(properties.getAutoFlush()));
+            scheduleFlush();
+        } catch (IOException ex) {
+            logger.warn("Rolling p6spy appender failed to reconfigure", ex);    // $NON-NLS-1$
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns {@code true}, as the log file and the formatting strategy are taken from the properties when they are set
+     *
+     * @return {@code true}
+     */
+    @Override
+    public boolean isOutputReconfigurable() {
+        return true;
+    }
+
+    @Override
+    public void logText(String text) {
+        write(text, true);
+    }
+
+    @Override
+    public void logException(Exception e) {
+        StringWriter writer = new StringWriter();
+        e.printStackTrace(new PrintWriter(writer));
+        write(writer.toString(), false);
+    }
+
+    @Override
+    public boolean isCategoryEnabled(Category category) {
+        return true;
+    }
+
+    /**
+     * Writes the buffered bytes to the file
+     */
+    @Override
+    public void flush() {
+        lock.lock();
+        try {
+            flushBuffer();
+        } catch (IOException ex) {
+            logger.warn("Rolling p6spy appender failed to flush", ex);    // $NON-NLS-1$
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the buffered bytes, closes the file and waits for the pending compressions and purges
+     * <p>
+     * Waits no longer than the shutdown timeout. The file will be reopened if anything is written after closed
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService service;
+        ExecutorService archiveService;
+        long timeoutMillis;
+        lock.lock();
+        try {
+            closeChannel();
+        } catch (IOException ex) {
+            logger.warn("Rolling p6spy appender failed to close", ex);    // $NON-NLS-1$
+        } finally {
+            service = executor;
+            archiveService = archiver;
+            executor = null;
+            flushTask = null;
+            archiver = null;
+            timeoutMillis = shutdownTimeoutMillis;
+            lock.unlock();
+        }
+        if (service != null) {
+            service.shutdown();
+        }
+        if (archiveService != null) {
+            archiveService.shutdown();
+            try {
+                archiveService.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void applySettings(P6spyProperties.RollingFile settings, boolean flush) {
+        int size = (settings.getBufferSize() == null) ? 0 : (int) Math.min(settings.getBufferSize().toBytes(), Integer.MAX_VALUE);
+        bufferSize = Math.max(size, MIN_BUFFER_SIZE);
+        maxFileSize = (settings.getMaxFileSize() == null || settings.getMaxFileSize().toBytes() <= 0L) ? Long.MAX_VALUE : settings.getMaxFileSize().toBytes();
+        rollingIntervalMillis = (settings.getRollingInterval() == null) ? 0L : settings.getRollingInterval().toMillis();
+        flushIntervalMillis = (settings.getFlushInterval() == null) ? 0L : settings.getFlushInterval().toMillis();
+        maxHistory = ObjectUtils.defaultIfNull(settings.getMaxHistory(), 0);
+        compress = BooleanUtils.isTrue(settings.getCompress());
+        autoFlush = flush;
+        long timeoutMillis = (settings.getShutdownTimeout() == null) ? 0L : settings.getShutdownTimeout().toMillis();
+        shutdownTimeoutMillis = (timeoutMillis > 0L) ? timeoutMillis : DEFAULT_SHUTDOWN_TIMEOUT_MILLIS;
+    }
+
+    private void write(String text, boolean newLine) {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (channel == null) {
+                openChannel(now, P6SpyOptions.getActiveInstance().getAppend());
+            } else if (now >= nextRollMillis || channelSize + buffer.position() >= maxFileSize) {
+                rollChannel(now);
+            }
+            encode(text);
+            if (newLine) {
+                encode(System.lineSeparator());
+            }
+            if (autoFlush && !lock.hasQueuedThreads()) {
+                flushBuffer();
+            }
+        } catch (IOException ex) {
+            logger.warn("Rolling p6spy appender failed to write", ex);    // $NON-NLS-1$
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void encode(CharSequence text) throws IOException {
+        if (StringUtils.isEmpty(text)) {
+            return;
+        }
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        CoderResult result = encoder.encode(chars, buffer, true);
+        while (result.isOverflow()) {
+            flushBuffer();
+            result = encoder.encode(chars, buffer, true);
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (channel == null || buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channelSize += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void openChannel(long now, boolean append) throws IOException {
+        if (path == null) {
+            String logFile = StringUtils.defaultIfBlank(P6SpyOptions.getActiveInstance().getLogfile(), "spy.log");    // $NON-NLS-1$
+            path = Paths.get(logFile).toAbsolutePath().normalize();
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = append ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+            : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        channelSize = channel.size();
+        if (buffer == null || buffer.capacity() != bufferSize) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        openedMillis = now;
+        nextRollMillis = computeNextRoll(now);
+        if (executor == null) {
+            ScheduledThreadPoolExecutor service = new ScheduledThreadPoolExecutor(1, runnable -> newDaemonThread(runnable, THREAD_NAME));
+            service.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            executor = service;
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Schedules the periodic flush with the current interval, replacing the previous schedule
+     */
+    private void scheduleFlush() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (executor != null && flushIntervalMillis > 0L) {
+            flushTask = executor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void rollChannel(long now) throws IOException {
+        closeChannel();
+        Path rolled = resolveRolledPath(openedMillis);
+        Files.move(path, rolled);
+        if (compress || maxHistory > 0) {
+            if (archiver == null) {
+                archiver = Executors.newSingleThreadExecutor(runnable -> newDaemonThread(runnable, ARCHIVER_THREAD_NAME));
+            }
+            Path current = path;
+            if (compress) {
+                archiver.execute(() -> compressFile(rolled));
+            }
+            if (maxHistory > 0) {
+                int history = maxHistory;
+                archiver.execute(() -> purgeHistory(current, history));
+            }
+        }
+        openChannel(now, false);
+    }
+
+    /**
+     * The compressions and purges run on a thread of their own, so a large file never delays the periodic flush
+     */
+    private static Thread newDaemonThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Only flushes when no writer holds the lock, the periodic flush must never stall a writer
+     */
+    private void flushQuietly() {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } catch (IOException ex) {
+            logger.warn("Rolling p6spy appender failed to flush", ex);    // $NON-NLS-1$
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long computeNextRoll(long now) {
+        if (rollingIntervalMillis <= 0L) {
+            return Long.MAX_VALUE;
+        }
+        long offset = TimeZone.getDefault().getOffset(now);
+        long local = now + offset;
+        return local - Math.floorMod(local, rollingIntervalMillis) + rollingIntervalMillis - offset;
+    }
+
+    private Path resolveRolledPath(long millis) {
+        String timestamp = ROLLED_FORMATTER.format(Instant.ofEpochMilli(millis));
+        Path rolled = path.resolveSibling(getBaseName(path) + '-' + timestamp + getExtension(path));
+        for (int i = 1; Files.exists(rolled) || Files.exists(Paths.get(rolled + GZIP_EXTENSION)); i++) {
+            rolled = path.resolveSibling(getBaseName(path) + '-' + timestamp + '.' + i + getExtension(path));
+        }
+        return rolled;
+    }
+
+    /**
+     * Skips the file that has been purged already, as the rolls may outpace the archiver
+     */
+    private void compressFile(Path source) {
+        if (Files.notExists(source)) {
+            return;
+        }
+        Path target = Paths.get(source + GZIP_EXTENSION);
+        try (OutputStream stream = new GZIPOutputStream(Files.newOutputStream(target), 65536)) {
+            Files.copy(source, stream);
+        } catch (IOException ex) {
+            logger.warn("Rolling p6spy appender failed to compress " + source, ex);    // $NON-NLS-1$
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+        try {
+            Files.deleteIfExists(source);
+        } catch (IOException ex) {
+            logger.warn("Rolling p6spy appender failed to delete " + source, ex);    // $NON-NLS-1$
+        }
+    }
+
+    private void purgeHistory(Path current, int history) {
+        Pattern pattern = Pattern.compile(Pattern.quote(getBaseName(current)) + "-(\\d{8}-\\d{6})(?:\\.(\\d{1,9}))?" + Pattern.quote(getExtension(current)) + "(?:" + Pattern.quote(GZIP_EXTENSION) + ")?");    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$
+        Map<String, List<Path>> rolledFiles = new TreeMap<>();
+        try (Stream<Path> stream = Files.list(current.getParent())) {
+            stream.forEach(file -> {
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    String key = matcher.group(1) + '.' + StringUtils.leftPad(Objects.toString(matcher.group(2), "0"), 9, '0');    // $NON-NLS-1$
+                    rolledFiles.computeIfAbsent(key, name -> new ArrayList<>(2)).add(file);
+                }
+            });
+        } catch (IOException ex) {
+            logger.warn("Rolling p6spy appender failed to list rolled files", ex);    // $NON-NLS-1$
+            return;
+        }
+        int excess = rolledFiles.size() - history;
+        for (List<Path> files : rolledFiles.values()) {
+            if (excess-- <= 0) {
+                break;
+            }
+            for (Path file : files) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ex) {
+                    logger.warn("Rolling p6spy appender failed to delete " + file, ex);    // $NON-NLS-1$
+                }
+            }
+        }
+    }
+
+    private static String getBaseName(Path file) {
+        String name = file.getFileName().toString();
+        int index = name.lastIndexOf('.');
+        return (index > 0) ? name.substring(0, index) : name;
+    }
+
+    private static String getExtension(Path file) {
+        String name = file.getFileName().toString();
+        int index = name.lastIndexOf('.');
+        return (index > 0) ? name.substring(index) : StringUtils.EMPTY;
+    }
+}
@@ -17,25 +17,31 @@
 package com.yookue.springstarter.p6spy.config;
 
 
-import java.util.Map;
 import org.apache.commons.lang3.BooleanUtils;
-import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.util.ClassUtils;
-import org.springframework.util.ReflectionUtils;
-import com.p6spy.engine.spy.P6ModuleManager;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.env.Environment;
+import com.p6spy.engine.common.P6LogQuery;
 import com.p6spy.engine.spy.P6SpyDriver;
-import com.p6spy.engine.spy.P6SpyOptions;
-import com.yookue.commonplexus.javaseutil.annotation.PropertyAlias;
-import com.yookue.commonplexus.javaseutil.constant.StringVariantConst;
-import com.yookue.commonplexus.springutil.util.AnnotationUtilsWraps;
-import com.yookue.commonplexus.springutil.util.ClassUtilsWraps;
-import com.yookue.commonplexus.springutil.util.ReflectionUtilsWraps;
+import com.yookue.springstarter.p6spy.appender.PropertiesAwareLogger;
 import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import com.yookue.springstarter.p6spy.support.ConnectionLeaseProfiler;
+import com.yookue.springstarter.p6spy.support.DataSourceWrappingPostProcessor;
+import com.yookue.springstarter.p6spy.support.LogRateLimiter;
+import com.yookue.springstarter.p6spy.support.LoggingSettings;
+import com.yookue.springstarter.p6spy.support.RepeatedStatementDetector;
+import com.yookue.springstarter.p6spy.support.SpyOptionsUtils;
+import com.yookue.springstarter.p6spy.support.SqlFingerprintUtils;
+import com.yookue.springstarter.p6spy.support.SwitchableSpyDataSource;
 import lombok.RequiredArgsConstructor;
 
 
@@ -50,39 +56,53 @@ import lombok.RequiredArgsConstructor;
 @ConditionalOnClass(value = P6SpyDriver.class)
 @ConditionalOnProperty(prefix = P6spyAutoConfiguration.PROPERTIES_PREFIX, name = "enabled", havingValue = "true", matchIfMissing = true)
 @EnableConfigurationProperties(value = P6spyProperties.class)
+@ImportRuntimeHints(value = P6spyRuntimeHints.class)
 @RequiredArgsConstructor
 @SuppressWarnings({"JavadocDeclaration", "JavadocLinkAsPlainText"})
-public class P6spyAutoConfiguration implements InitializingBean {
+public class P6spyAutoConfiguration implements InitializingBean, DisposableBean {
     public static final String PROPERTIES_PREFIX = "spring.p6spy";    // $NON-NLS-1$
 
     private final P6spyProperties properties;
 
     @Override
     public void afterPropertiesSet() {
-        Map<String, String> options = P6SpyOptions.getActiveInstance().getDefaults();
-        ReflectionUtils.doWithFields(P6spyProperties.class, field -> {
-            String fieldName = field.getName();
-            if (StringUtils.equalsIgnoreCase(fieldName, StringVariantConst.ENABLED)) {
-                return;
-            }
-            String fieldValue = null;
-            if (ClassUtils.isAssignable(Boolean.class, field.getType())) {
-                fieldValue = BooleanUtils.toStringTrueFalse(ReflectionUtilsWraps.getFieldAs(field, true, properties, Boolean.class));
-            } else if (ClassUtils.isAssignable(String.class, field.getType())) {
-                fieldValue = ReflectionUtilsWraps.getFieldAs(field, true, properties, String.class);
-                if (StringUtils.isNotBlank(fieldValue) && StringUtils.equalsIgnoreCase(fieldName, P6SpyOptions.LOGFILE)) {
-                    fieldValue = org.springframework.util.StringUtils.cleanPath(fieldValue);
-                }
-            } else if (ClassUtils.isAssignable(Class.class, field.getType())) {
-                fieldValue = ClassUtilsWraps.getQualifiedName(ReflectionUtilsWraps.getFieldAs(field, true, properties, Class.class));
-            }
-            if (StringUtils.isBlank(fieldValue)) {
-                return;
-            }
-            String fieldAlias = AnnotationUtilsWraps.getAnnotationAttributeAsString(field, PropertyAlias.class, StringVariantConst.VALUE);
-            options.put(StringUtils.defaultIfBlank(fieldAlias, fieldName), fieldValue);
-        });
-        P6SpyOptions.getActiveInstance().load(options);
-        P6ModuleManager.getInstance().reload();
+        LoggingSettings.setActiveInstance(LoggingSettings.of(properties, null));
+        SwitchableSpyDataSource.setSpying(BooleanUtils.isNotFalse(properties.getDatasourceWrapper().getSpying()));
+        SqlFingerprintUtils.getCache().setMaximumSize(Math.max(ObjectUtils.defaultIfNull(properties.getFingerprint().getCacheSize(), 0), 0));
+        LogRateLimiter.getInstance().configure(properties.getRateLimit());
+        SpyOptionsUtils.applyOptions(properties);
+        if (P6LogQuery.getLogger() instanceof PropertiesAwareLogger logger) {
+            logger.setProperties(properties);
+        }
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = PROPERTIES_PREFIX + ".datasource-wrapper", name = "enabled", havingValue = "true")
+    public static DataSourceWrappingPostProcessor p6spyDataSourceWrappingPostProcessor(Environment environment) {
+        P6spyProperties props = Binder.get(environment).bind(PROPERTIES_PREFIX, P6spyProperties.class).orElseGet(P6spyProperties::new);
+        return new DataSourceWrappingPostProcessor(props);
+    }
+
+    @Bean(initMethod = "start")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = PROPERTIES_PREFIX + ".repeated-statements", name = "enabled", havingValue = "true")
+    public RepeatedStatementDetector p6spyRepeatedStatementDetector() {
+        P6spyProperties.RepeatedStatements props = properties.getRepeatedStatements();
+        return new RepeatedStatementDetector(props.getThreshold(), props.getMaxFingerprints());
+    }
+
+    @Bean(initMethod = "start")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = PROPERTIES_PREFIX + ".connection-leases", name = "enabled", havingValue = "true")
+    public ConnectionLeaseProfiler p6spyConnectionLeaseProfiler() {
+        return new ConnectionLeaseProfiler(properties.getConnectionLeases());
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        LogRateLimiter.getInstance().close();
+        if (P6LogQuery.getLogger() instanceof AutoCloseable logger) {
+            logger.close();
+        }
     }
 }
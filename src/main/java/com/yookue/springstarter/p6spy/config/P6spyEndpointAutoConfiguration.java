@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.config;
+
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import com.yookue.springstarter.p6spy.endpoint.P6spyEndpoint;
+import com.yookue.springstarter.p6spy.endpoint.P6spyRingEndpoint;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import com.yookue.springstarter.p6spy.support.SlowStatementTracker;
+
+
+/**
+ * Configuration for p6spy actuator endpoint
+ *
+ * @author David Hsing
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(value = Endpoint.class)
+@ConditionalOnBean(value = P6spyAutoConfiguration.class)
+@AutoConfigureAfter(value = P6spyAutoConfiguration.class)
+public class P6spyEndpointAutoConfiguration {
+    @Bean(initMethod = "start")
+    @ConditionalOnMissingBean
+    @ConditionalOnAvailableEndpoint(endpoint = P6spyEndpoint.class)
+    @ConditionalOnProperty(prefix = P6spyAutoConfiguration.PROPERTIES_PREFIX + ".slow-statements", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public SlowStatementTracker p6spySlowStatementTracker(P6spyProperties properties) {
+        P6spyProperties.SlowStatements props = properties.getSlowStatements();
+        return new SlowStatementTracker(props.getCapacity(), props.getWindow().toMillis(), props.getSlots());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnAvailableEndpoint(endpoint = P6spyEndpoint.class)
+    public P6spyEndpoint p6spyEndpoint(ObjectProvider<SlowStatementTracker> trackerProvider) {
+        return new P6spyEndpoint(trackerProvider.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnAvailableEndpoint(endpoint = P6spyRingEndpoint.class)
+    public P6spyRingEndpoint p6spyRingEndpoint() {
+        return new P6spyRingEndpoint();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.config;
+
+
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import com.yookue.springstarter.p6spy.metrics.ConnectionLeaseMetrics;
+import com.yookue.springstarter.p6spy.metrics.SqlFingerprintCacheMetrics;
+import com.yookue.springstarter.p6spy.metrics.StatementTimerMetrics;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import com.yookue.springstarter.p6spy.support.ConnectionLeaseProfiler;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+
+/**
+ * Configuration for p6spy metrics
+ * <p>
+ * The meter binders are bound to the registries by Spring Boot Actuator, if present
+ *
+ * @author David Hsing
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(value = MeterBinder.class)
+@ConditionalOnBean(value = P6spyAutoConfiguration.class)
+@AutoConfigureAfter(value = P6spyAutoConfiguration.class)
+public class P6spyMetricsAutoConfiguration {
+    @Bean
+    @ConditionalOnMissingBean
+    public SqlFingerprintCacheMetrics p6spyFingerprintCacheMetrics() {
+        return new SqlFingerprintCacheMetrics();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = P6spyAutoConfiguration.PROPERTIES_PREFIX + ".metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public StatementTimerMetrics p6spyStatementTimerMetrics(P6spyProperties properties) {
+        return new StatementTimerMetrics(properties.getMetrics());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnBean(value = ConnectionLeaseProfiler.class)
+    @ConditionalOnProperty(prefix = P6spyAutoConfiguration.PROPERTIES_PREFIX + ".metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public ConnectionLeaseMetrics p6spyConnectionLeaseMetrics(ConnectionLeaseProfiler profiler, P6spyProperties properties) {
+        return new ConnectionLeaseMetrics(profiler, properties.getMetrics());
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.config;
+
+
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import com.yookue.springstarter.p6spy.support.LoggingSettingsRefresher;
+
+
+/**
+ * Configuration for applying the changed p6spy properties on environment changes
+ *
+ * @author David Hsing
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(value = EnvironmentChangeEvent.class)
+@ConditionalOnBean(value = P6spyAutoConfiguration.class)
+@ConditionalOnProperty(prefix = P6spyAutoConfiguration.PROPERTIES_PREFIX + ".refresh", name = "enabled", havingValue = "true", matchIfMissing = true)
+@AutoConfigureAfter(value = P6spyAutoConfiguration.class)
+public class P6spyRefreshAutoConfiguration {
+    @Bean
+    @ConditionalOnMissingBean
+    public LoggingSettingsRefresher p6spyLoggingSettingsRefresher(Environment environment) {
+        return new LoggingSettingsRefresher(environment);
+    }
+}
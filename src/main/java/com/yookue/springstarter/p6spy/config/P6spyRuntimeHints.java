@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.config;
+
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+
+/**
+ * Runtime hints for p6spy, which loads its modules, appenders, formatters and listeners by class name
+ * <p>
+ * Custom appenders or formatters that are configured by class name need hints of their own
+ *
+ * @author David Hsing
+ * @see org.springframework.aot.hint.RuntimeHintsRegistrar
+ */
+@SuppressWarnings("unused")
+public class P6spyRuntimeHints implements RuntimeHintsRegistrar {
+    private static final String[] INSTANTIATED_TYPES = {
+        "com.p6spy.engine.spy.P6SpyDriver", "com.p6spy.engine.spy.P6SpyFactory", "com.p6spy.engine.logging.P6LogFactory",    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$
+        "com.p6spy.engine.outage.P6OutageFactory", "com.p6spy.engine.spy.appender.FileLogger",    // $NON-NLS-1$ // $NON-NLS-2$
+        "com.p6spy.engine.spy.appender.BatchFileLogger", "com.p6spy.engine.spy.appender.StdoutLogger",    // $NON-NLS-1$ // $NON-NLS-2$
+        "com.p6spy.engine.spy.appender.Slf4JLogger", "com.p6spy.engine.spy.appender.NoopLogger",    // $NON-NLS-1$ // $NON-NLS-2$
+        "com.p6spy.engine.spy.appender.SingleLineFormat", "com.p6spy.engine.spy.appender.MultiLineFormat",    // $NON-NLS-1$ // $NON-NLS-2$
+        "com.p6spy.engine.spy.appender.CustomLineFormat", "com.p6spy.engine.logging.format.HexEncodedBinaryFormat",    // $NON-NLS-1$ // $NON-NLS-2$
+        "com.p6spy.engine.logging.format.MySQLBinaryFormat", "com.p6spy.engine.logging.format.PostgreSQLBinaryFormat",    // $NON-NLS-1$ // $NON-NLS-2$
+        "com.yookue.springstarter.p6spy.appender.AsyncBatchLogger", "com.yookue.springstarter.p6spy.appender.ConsoleLogger",    // $NON-NLS-1$ // $NON-NLS-2$
+        "com.yookue.springstarter.p6spy.appender.FlightRecorderLogger", "com.yookue.springstarter.p6spy.appender.RollingFileLogger",    // $NON-NLS-1$ // $NON-NLS-2$
+        "com.yookue.springstarter.p6spy.appender.FlightRecorderStatementEvent", "com.yookue.springstarter.p6spy.appender.FlightRecorderStatementEvent$ElapsedThresholdSetting",    // $NON-NLS-1$ // $NON-NLS-2$
+        "com.yookue.springstarter.p6spy.appender.RingBufferLogger",    // $NON-NLS-1$
+        "com.yookue.springstarter.p6spy.strategy.CompactSingleLineFormat", "com.yookue.springstarter.p6spy.strategy.JsonLineFormat",    // $NON-NLS-1$ // $NON-NLS-2$
+        "com.yookue.springstarter.p6spy.listener.GatedLoggingEventListener", "com.yookue.springstarter.p6spy.listener.DelegatingJdbcEventListener"    // $NON-NLS-1$ // $NON-NLS-2$
+    };
+
+    private static final String[] MBEAN_TYPES = {
+        "com.p6spy.engine.spy.P6SpyOptionsMBean", "com.p6spy.engine.logging.P6LogOptionsMBean", "com.p6spy.engine.outage.P6OutageOptionsMBean"    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$
+    };
+
+    private static final String[] SERVICE_RESOURCES = {
+        "META-INF/services/java.sql.Driver", "META-INF/services/com.p6spy.engine.event.JdbcEventListener",    // $NON-NLS-1$ // $NON-NLS-2$
+        "META-INF/services/com.p6spy.engine.logging.LoggingEventListener"    // $NON-NLS-1$
+    };
+
+    private static final String SPY_PROPERTIES = "spy.properties";    // $NON-NLS-1$
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (String type : INSTANTIATED_TYPES) {
+            hints.reflection().registerTypeIfPresent(classLoader, type, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        }
+        for (String type : MBEAN_TYPES) {
+            hints.reflection().registerTypeIfPresent(classLoader, type, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+        for (String resource : SERVICE_RESOURCES) {
+            hints.resources().registerPattern(resource);
+        }
+        hints.resources().registerPattern(SPY_PROPERTIES);
+    }
+}
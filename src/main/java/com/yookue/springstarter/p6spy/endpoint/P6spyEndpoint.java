@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.endpoint;
+
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.actuate.endpoint.OperationResponseBody;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import com.yookue.springstarter.p6spy.support.SlowStatementTracker;
+import com.yookue.springstarter.p6spy.support.SqlFingerprintUtils;
+import com.yookue.springstarter.p6spy.support.SwitchableSpyDataSource;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+
+/**
+ * Actuator endpoint for p6spy
+ * <p>
+ * Reports the slowest statements over the sliding window of {@link com.yookue.springstarter.p6spy.support.SlowStatementTracker},
+ * and the fingerprints of them. The fingerprints are computed only when the endpoint is read
+ * <p>
+ * Also reports and switches whether the new connections of the wrapped data sources are spied
+ *
+ * @author David Hsing
+ */
+@Endpoint(id = "p6spy")
+@RequiredArgsConstructor
+@SuppressWarnings("unused")
+public class P6spyEndpoint {
+    private final SlowStatementTracker tracker;
+
+    @ReadOperation
+    public P6spyDescriptor p6spy() {
+        boolean spying = SwitchableSpyDataSource.isSpying();
+        if (tracker == null) {
+            return new P6spyDescriptor(spying, null, Collections.emptyList(), Collections.emptyList());
+        }
+        List<SlowStatementTracker.Entry> entries = tracker.getEntries();
+        List<StatementDescriptor> statements = entries.stream().map(StatementDescriptor::new).toList();
+        Map<String, FingerprintDescriptor> fingerprints = new LinkedHashMap<>();
+        for (SlowStatementTracker.Entry entry : entries) {
+            String fingerprint = StringUtils.defaultString(SqlFingerprintUtils.fingerprint(entry.getSql()));
+            fingerprints.computeIfAbsent(fingerprint, FingerprintDescriptor::new).add(entry);
+        }
+        List<FingerprintDescriptor> slowest = fingerprints.values().stream().sorted(Comparator.comparingDouble(FingerprintDescriptor::getMaxElapsedMillis).reversed()).toList();
+        return new P6spyDescriptor(spying, Duration.ofMillis(tracker.getWindowMillis()), statements, slowest);
+    }
+
+    /**
+     * Switches whether the new connections of the wrapped data sources are spied
+     *
+     * @param spying whether the new connections of the wrapped data sources are spied
+     *
+     * @see com.yookue.springstarter.p6spy.support.SwitchableSpyDataSource
+     */
+    @WriteOperation
+    public void spying(boolean spying) {
+        SwitchableSpyDataSource.setSpying(spying);
+    }
+
+
+    /**
+     * Description of p6spy
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class P6spyDescriptor implements OperationResponseBody {
+        private final boolean spying;
+        private final Duration window;
+        private final List<StatementDescriptor> statements;
+        private final List<FingerprintDescriptor> fingerprints;
+    }
+
+
+    /**
+     * Description of a slow statement
+     *
+     * @author David Hsing
+     */
+    @Getter
+    public static final class StatementDescriptor {
+        private final double elapsedMillis;
+        private final String category;
+        private final int connectionId;
+        private final String sql;
+        private final String caller;
+        private final Instant timestamp;
+
+        private StatementDescriptor(SlowStatementTracker.Entry entry) {
+            this.elapsedMillis = entry.getElapsedMillis();
+            this.category = entry.getCategory();
+            this.connectionId = entry.getConnectionId();
+            this.sql = entry.getSql();
+            this.caller = entry.getCaller();
+            this.timestamp = Instant.ofEpochMilli(entry.getTimestamp());
+        }
+    }
+
+
+    /**
+     * Description of a fingerprint among the slow statements
+     *
+     * @author David Hsing
+     */
+    @Getter
+    public static final class FingerprintDescriptor {
+        private final String fingerprint;
+        private int count;
+        private double maxElapsedMillis;
+        private double totalElapsedMillis;
+
+        private FingerprintDescriptor(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        private void add(SlowStatementTracker.Entry entry) {
+            count++;
+            maxElapsedMillis = Math.max(maxElapsedMillis, entry.getElapsedMillis());
+            totalElapsedMillis += entry.getElapsedMillis();
+        }
+    }
+}
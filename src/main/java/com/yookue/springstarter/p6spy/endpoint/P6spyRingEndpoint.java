@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.endpoint;
+
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import org.springframework.boot.actuate.endpoint.OperationResponseBody;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import com.yookue.springstarter.p6spy.appender.RingBufferLogger;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+
+/**
+ * Actuator endpoint for {@link com.yookue.springstarter.p6spy.appender.RingBufferLogger}
+ * <p>
+ * Reports the usage of the ring buffers, and dumps them on a write operation
+ *
+ * @author David Hsing
+ */
+@Endpoint(id = "p6spyring")
+@SuppressWarnings("unused")
+public class P6spyRingEndpoint {
+    @ReadOperation
+    public RingsDescriptor rings() {
+        return new RingsDescriptor(RingBufferLogger.getInstances().stream().map(RingDescriptor::new).toList());
+    }
+
+    /**
+     * Dumps the ring buffers of all the open ring appenders
+     *
+     * @return the files of the dumps
+     */
+    @WriteOperation
+    public List<String> dump() {
+        try {
+            return RingBufferLogger.dumpAll("actuator").stream().map(Path::toString).toList();    // $NON-NLS-1$
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+
+    /**
+     * Description of the ring buffers
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class RingsDescriptor implements OperationResponseBody {
+        private final List<RingDescriptor> rings;
+    }
+
+
+    /**
+     * Description of a ring buffer
+     *
+     * @author David Hsing
+     */
+    @Getter
+    public static final class RingDescriptor {
+        private final int capacity;
+        private final long usedBytes;
+        private final long recordedCount;
+        private final long overwrittenCount;
+        private final String lastDumpPath;
+
+        private RingDescriptor(RingBufferLogger logger) {
+            this.capacity = logger.getCapacity();
+            this.usedBytes = logger.getUsedBytes();
+            this.recordedCount = logger.getRecordedCount();
+            this.overwrittenCount = logger.getOverwrittenCount();
+            this.lastDumpPath = (logger.getLastDumpPath() == null) ? null : logger.getLastDumpPath().toString();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.enumeration;
+
+
+/**
+ * Policies when the ring buffer of {@link com.yookue.springstarter.p6spy.appender.AsyncBatchLogger} is full
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public enum OverflowPolicy {
+    /**
+     * Waits until the consumer frees a slot, no event is lost
+     */
+    BLOCK,
+
+    /**
+     * Discards the incoming event
+     */
+    DROP_NEWEST,
+
+    /**
+     * Discards the oldest buffered event to make room for the incoming one
+     */
+    DROP_OLDEST
+}
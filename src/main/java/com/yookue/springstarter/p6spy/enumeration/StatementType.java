@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.enumeration;
+
+
+import org.apache.commons.lang3.StringUtils;
+
+
+/**
+ * Types of the statements, told by the leading keyword of the sql
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.support.StatementFilter
+ */
+@SuppressWarnings("unused")
+public enum StatementType {
+    /**
+     * Queries, such as {@code select}, {@code with}, {@code values}, {@code show} and {@code explain}
+     */
+    SELECT,
+
+    /**
+     * Data manipulations, such as {@code insert}, {@code update}, {@code delete}, {@code merge}, {@code upsert} and {@code replace}
+     */
+    DML,
+
+    /**
+     * Data definitions, such as {@code create}, {@code alter}, {@code drop}, {@code truncate}, {@code rename},
+     * {@code comment}, {@code grant} and {@code revoke}
+     */
+    DDL,
+
+    /**
+     * Anything else, such as {@code call}, {@code set}, {@code commit} and empty statements
+     */
+    OTHER;
+
+    /**
+     * Returns the type of the sql, by its leading keyword after any whitespaces, comments and parentheses
+     *
+     * @param sql the sql to check
+     *
+     * @return the type of the sql, by its leading keyword after any whitespaces, comments and parentheses
+     */
+    public static StatementType of(String sql) {
+        if (StringUtils.isEmpty(sql)) {
+            return OTHER;
+        }
+        int length = sql.length(), start = 0;
+        while (start < length) {
+            char ch = sql.charAt(start);
+            if (Character.isWhitespace(ch) || ch == '(') {
+                start++;
+            } else if (ch == '-' && start + 1 < length && sql.charAt(start + 1) == '-') {
+                int end = sql.indexOf('\n', start + 2);
+                start = (end < 0) ? length : end + 1;
+            } else if (ch == '/' && start + 1 < length && sql.charAt(start + 1) == '*') {
+                int end = sql.indexOf("*/", start + 2);    // $NON-NLS-1$
+                start = (end < 0) ? length : end + 2;
+            } else {
+                break;
+            }
+        }
+        int end = start;
+        while (end < length && Character.isLetter(sql.charAt(end))) {
+            end++;
+        }
+        return switch (StringUtils.lowerCase(sql.substring(start, end))) {
+            case "select", "with", "values", "table", "show", "explain", "describe", "desc" -> SELECT;    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$ // $NON-NLS-4$ // $NON-NLS-5$ // $NON-NLS-6$ // $NON-NLS-7$ // $NON-NLS-8$
+            case "insert", "update", "delete", "merge", "upsert", "replace" -> DML;    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$ // $NON-NLS-4$ // $NON-NLS-5$ // $NON-NLS-6$
+            case "create", "alter", "drop", "truncate", "rename", "comment", "grant", "revoke" -> DDL;    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$ // $NON-NLS-4$ // $NON-NLS-5$ // $NON-NLS-6$ // $NON-NLS-7$ // $NON-NLS-8$
+            default -> OTHER;
+        };
+    }
+}
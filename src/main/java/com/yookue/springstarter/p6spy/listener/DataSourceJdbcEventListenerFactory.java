@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.listener;
+
+
+import java.beans.PropertyDescriptor;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ReflectionUtils;
+import com.p6spy.engine.event.CompoundJdbcEventListener;
+import com.p6spy.engine.event.DefaultEventListener;
+import com.p6spy.engine.event.JdbcEventListener;
+import com.p6spy.engine.logging.Category;
+import com.p6spy.engine.logging.LoggingEventListener;
+import com.p6spy.engine.spy.JdbcEventListenerFactory;
+import com.p6spy.engine.spy.P6Factory;
+import com.p6spy.engine.spy.P6ModuleManager;
+import com.p6spy.engine.spy.appender.P6Logger;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import com.yookue.springstarter.p6spy.support.LoggingSettings;
+
+
+/**
+ * Listener factory of a single data source, which replaces the logging listener of the modules with a
+ * {@link com.yookue.springstarter.p6spy.listener.DataSourceLoggingEventListener}
+ * <p>
+ * The compound listener is built as {@link com.p6spy.engine.spy.DefaultJdbcEventListenerFactory} does, and rebuilt only when
+ * the modules are reloaded
+ *
+ * @author David Hsing
+ * @see com.p6spy.engine.spy.P6DataSource#setJdbcEventListenerFactory
+ */
+@SuppressWarnings("unused")
+public class DataSourceJdbcEventListenerFactory implements JdbcEventListenerFactory, AutoCloseable {
+    private final DataSourceLoggingEventListener loggingListener;
+    private volatile P6ModuleManager moduleManager;
+    private volatile JdbcEventListener eventListener;
+
+    public DataSourceJdbcEventListenerFactory(DataSourceLoggingEventListener loggingListener) {
+        this.loggingListener = loggingListener;
+    }
+
+    /**
+     * Returns a factory that is built from the overrides of a data source, falling back to the properties
+     *
+     * @param properties the properties of the starter
+     * @param override the overrides of a data source
+     *
+     * @return a factory that is built from the overrides of a data source, falling back to the properties
+     */
+    public static DataSourceJdbcEventListenerFactory of(P6spyProperties properties, P6spyProperties.DatasourceOverride override) {
+        P6Logger logger = null;
+        if (hasOwnLogger(override)) {
+            logger = LoggingSettings.newLogger(overlay(properties, override));
+        }
+        Set<Category> excludedCategories = LoggingSettings.toCategories(override.getExcludeCategories());
+        return new DataSourceJdbcEventListenerFactory(new DataSourceLoggingEventListener(logger, override, excludedCategories));
+    }
+
+    /**
+     * Returns whether the data source has an appender of its own
+     *
+     * @param override the overrides of a data source
+     *
+     * @return whether the data source has an appender of its own
+     */
+    public static boolean hasOwnLogger(P6spyProperties.DatasourceOverride override) {
+        return override.getAppender() != null || override.getLogMessageFormat() != null || StringUtils.isNotBlank(override.getLogFile());
+    }
+
+    /**
+     * Returns a copy of the properties, with the appender, the formatting strategy and the log file of a data source applied
+     * <p>
+     * The nested groups, such as {@code async} and {@code rolling-file}, are final, so they are copied one by one
+     *
+     * @param properties the properties of the starter
+     * @param override the overrides of a data source
+     *
+     * @return a copy of the properties, with the appender, the formatting strategy and the log file of a data source applied
+     */
+    public static P6spyProperties overlay(P6spyProperties properties, P6spyProperties.DatasourceOverride override) {
+        P6spyProperties result = new P6spyProperties();
+        BeanUtils.copyProperties(properties, result);
+        for (PropertyDescriptor descriptor : BeanUtils.getPropertyDescriptors(P6spyProperties.class)) {
+            if (descriptor.getWriteMethod() == null && descriptor.getReadMethod() != null && descriptor.getPropertyType().getDeclaringClass() == P6spyProperties.class) {
+                BeanUtils.copyProperties(ReflectionUtils.invokeMethod(descriptor.getReadMethod(), properties), ReflectionUtils.invokeMethod(descriptor.getReadMethod(), result));
+            }
+        }
+        if (override.getAppender() != null) {
+            result.setAppender(override.getAppender());
+        }
+        if (override.getLogMessageFormat() != null) {
+            result.setLogMessageFormat(override.getLogMessageFormat());
+        }
+        if (StringUtils.isNotBlank(override.getLogFile())) {
+            result.setLogFile(override.getLogFile());
+        }
+        return result;
+    }
+
+    @Override
+    public JdbcEventListener createJdbcEventListener() {
+        P6ModuleManager manager = P6ModuleManager.getInstance();
+        JdbcEventListener listener = eventListener;
+        if (listener != null && manager == moduleManager) {
+            return listener;
+        }
+        CompoundJdbcEventListener compound = new CompoundJdbcEventListener();
+        compound.addListener(DefaultEventListener.INSTANCE);
+        List<P6Factory> factories = (manager == null) ? null : manager.getFactories();
+        if (factories != null) {
+            for (P6Factory factory : factories) {
+                JdbcEventListener factoryListener = factory.getJdbcEventListener();
+                if (factoryListener != null) {
+                    compound.addListener((factoryListener instanceof LoggingEventListener) ? loggingListener : factoryListener);
+                }
+            }
+        }
+        ServiceLoader.load(JdbcEventListener.class, DataSourceJdbcEventListenerFactory.class.getClassLoader()).forEach(compound::addListener);
+        moduleManager = manager;
+        eventListener = compound;
+        return compound;
+    }
+
+    @Override
+    public void close() throws Exception {
+        loggingListener.close();
+    }
+}
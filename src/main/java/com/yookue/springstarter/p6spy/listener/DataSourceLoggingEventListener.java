@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.listener;
+
+
+import java.util.Set;
+import com.p6spy.engine.logging.Category;
+import com.p6spy.engine.spy.appender.P6Logger;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import com.yookue.springstarter.p6spy.support.LoggingPolicy;
+import com.yookue.springstarter.p6spy.support.LoggingSettings;
+
+
+/**
+ * Logging listener of a single data source, with its own appender, policy and excluded categories
+ * <p>
+ * The absent ones fall back to the active {@link com.yookue.springstarter.p6spy.support.LoggingSettings}. The overridden policy
+ * fields are merged over the active global policy, and merged again only when a new global policy is published, so a refresh
+ * applies to the fields that are not overridden
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.listener.DataSourceJdbcEventListenerFactory
+ */
+@SuppressWarnings("unused")
+public class DataSourceLoggingEventListener extends GatedLoggingEventListener implements AutoCloseable {
+    private final P6Logger logger;
+    private final P6spyProperties.DatasourceOverride policyOverride;
+    private final Set<Category> excludedCategories;
+    private volatile MergedPolicy mergedPolicy;
+
+    /**
+     * Constructs a listener
+     *
+     * @param logger the appender of the data source, or {@code null} to use the global one
+     * @param override the overrides of the data source, whose policy fields are merged over the global policy, or {@code null}
+     * @param excludedCategories the excluded categories of the data source, or {@code null} to use the global ones
+     */
+    public DataSourceLoggingEventListener(P6Logger logger, P6spyProperties.DatasourceOverride override, Set<Category> excludedCategories) {
+        this.logger = logger;
+        this.policyOverride = LoggingPolicy.isOverriding(override) ? override : null;
+        this.excludedCategories = excludedCategories;
+    }
+
+    @Override
+    protected LoggingPolicy getPolicy(LoggingSettings settings) {
+        LoggingPolicy base = super.getPolicy(settings);
+        if (policyOverride == null) {
+            return base;
+        }
+        MergedPolicy merged = mergedPolicy;
+        if (merged == null || merged.base() != base) {
+            merged = new MergedPolicy(base, LoggingPolicy.of(base, policyOverride));
+            mergedPolicy = merged;
+        }
+        return merged.policy();
+    }
+
+    @Override
+    protected P6Logger getLogger(LoggingSettings settings) {
+        return (logger == null) ? super.getLogger(settings) : logger;
+    }
+
+    @Override
+    protected Set<Category> getExcludedCategories(LoggingSettings settings) {
+        return (excludedCategories == null) ? super.getExcludedCategories(settings) : excludedCategories;
+    }
+
+    /**
+     * Closes the appender of the data source, if it is closeable
+     */
+    @Override
+    public void close() throws Exception {
+        if (logger instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+
+    private record MergedPolicy(LoggingPolicy base, LoggingPolicy policy) {
+    }
+}
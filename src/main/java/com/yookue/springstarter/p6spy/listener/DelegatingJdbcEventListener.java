@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.listener;
+
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import com.p6spy.engine.event.CompoundJdbcEventListener;
+import com.p6spy.engine.event.JdbcEventListener;
+
+
+/**
+ * Compound listener whose delegates are registered at runtime, such as by the beans of the auto configurations
+ * <p>
+ * Registered through {@code META-INF/services/com.p6spy.engine.event.JdbcEventListener}, which is picked by
+ * {@link com.p6spy.engine.spy.DefaultJdbcEventListenerFactory}. All the instances share the same delegates, which are kept
+ * in a {@link java.util.concurrent.CopyOnWriteArrayList}, so dispatching an event never takes a lock
+ *
+ * @author David Hsing
+ * @see com.p6spy.engine.event.CompoundJdbcEventListener
+ */
+@SuppressWarnings("unused")
+public class DelegatingJdbcEventListener extends CompoundJdbcEventListener {
+    private static final CopyOnWriteArrayList<JdbcEventListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    public DelegatingJdbcEventListener() {
+        super(LISTENERS);
+    }
+
+    /**
+     * Registers the listener to receive the events of all the connections, if not registered yet
+     *
+     * @param listener the listener to register
+     */
+    public static void register(JdbcEventListener listener) {
+        if (listener != null) {
+            LISTENERS.addIfAbsent(listener);
+        }
+    }
+
+    /**
+     * Unregisters the listener, if registered
+     *
+     * @param listener the listener to unregister
+     */
+    public static void unregister(JdbcEventListener listener) {
+        if (listener != null) {
+            LISTENERS.remove(listener);
+        }
+    }
+}
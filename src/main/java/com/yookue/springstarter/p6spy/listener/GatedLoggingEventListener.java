@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.listener;
+
+
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import com.p6spy.engine.common.ConnectionInformation;
+import com.p6spy.engine.common.Loggable;
+import com.p6spy.engine.common.P6LogQuery;
+import com.p6spy.engine.common.PreparedStatementInformation;
+import com.p6spy.engine.common.ResultSetInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.logging.Category;
+import com.p6spy.engine.logging.LoggingEventListener;
+import com.p6spy.engine.logging.P6LogLoadableOptions;
+import com.p6spy.engine.logging.P6LogOptions;
+import com.p6spy.engine.spy.P6SpyLoadableOptions;
+import com.p6spy.engine.spy.P6SpyOptions;
+import com.p6spy.engine.spy.appender.P6Logger;
+import com.yookue.springstarter.p6spy.appender.FailureAwareLogger;
+import com.yookue.springstarter.p6spy.support.BatchSummary;
+import com.yookue.springstarter.p6spy.support.LogRateLimiter;
+import com.yookue.springstarter.p6spy.support.LoggingPolicy;
+import com.yookue.springstarter.p6spy.support.LoggingSettings;
+import com.yookue.springstarter.p6spy.support.ResultSetSummary;
+
+
+/**
+ * Logging listener that decides whether a line will be written before anything of the statement is touched
+ * <p>
+ * The execution threshold, the {@link com.yookue.springstarter.p6spy.support.LoggingPolicy}, the appender and the excluded
+ * categories are checked first, so filtered out statements never read the sql, never substitute the bound values and never call
+ * the formatting strategy. All of them are read from one {@link com.yookue.springstarter.p6spy.support.LoggingSettings} snapshot
+ * per event, so a reconfiguration takes effect from the next statement on, without a reload of p6spy
+ * <p>
+ * When the batches are aggregated, the rows added to a batch are counted into a {@link com.yookue.springstarter.p6spy.support.BatchSummary}
+ * instead of being logged one by one, and the summary is logged as one line when the batch is executed. The summaries of the statements
+ * that are closed under the wrapper or abandoned are dropped when their connection is closed, so they never hold a slot of
+ * {@code batch.max-statements} for good
+ * <p>
+ * When the result sets are summarized, the rows fetched and the values read are counted into a
+ * {@link com.yookue.springstarter.p6spy.support.ResultSetSummary}, which is logged as one line when the result set or its statement
+ * is closed, when the statement is executed again, or when the connection is closed
+ * <p>
+ * A failed statement is handed to the appender first if it is a {@link com.yookue.springstarter.p6spy.appender.FailureAwareLogger},
+ * regardless of the checks
+ * <p>
+ * Registered through {@code META-INF/services/com.p6spy.engine.logging.LoggingEventListener}, which is picked by
+ * {@link com.p6spy.engine.logging.P6LogFactory} in place of the default listener
+ *
+ * @author David Hsing
+ * @see com.p6spy.engine.logging.LoggingEventListener
+ * @see com.p6spy.engine.common.P6LogQuery
+ */
+@SuppressWarnings("unused")
+public class GatedLoggingEventListener extends LoggingEventListener {
+    private final ConcurrentMap<StatementInformation, BatchSummary> batches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<StatementInformation, ResultSetSummary> fetches = new ConcurrentHashMap<>();
+
+    @Override
+    public void onAfterExecuteQuery(PreparedStatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        super.onAfterExecuteQuery(statementInformation, timeElapsedNanos, e);
+        startFetch(statementInformation, timeElapsedNanos, e);
+    }
+
+    @Override
+    public void onAfterExecuteQuery(StatementInformation statementInformation, long timeElapsedNanos, String sql, SQLException e) {
+        super.onAfterExecuteQuery(statementInformation, timeElapsedNanos, sql, e);
+        startFetch(statementInformation, timeElapsedNanos, e);
+    }
+
+    @Override
+    public void onAfterGetResultSet(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        super.onAfterGetResultSet(statementInformation, timeElapsedNanos, e);
+        startFetch(statementInformation, timeElapsedNanos, e);
+    }
+
+    @Override
+    public void onAfterAddBatch(PreparedStatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        if (!addToBatch(statementInformation, statementInformation.getSql(), true, timeElapsedNanos, e)) {
+            super.onAfterAddBatch(statementInformation, timeElapsedNanos, e);
+        }
+    }
+
+    @Override
+    public void onAfterAddBatch(StatementInformation statementInformation, long timeElapsedNanos, String sql, SQLException e) {
+        if (!addToBatch(statementInformation, sql, false, timeElapsedNanos, e)) {
+            super.onAfterAddBatch(statementInformation, timeElapsedNanos, sql, e);
+        }
+    }
+
+    @Override
+    public void onAfterExecuteBatch(StatementInformation statementInformation, long timeElapsedNanos, int[] updateCounts, SQLException e) {
+        BatchSummary batch = batches.isEmpty() ? null : batches.remove(statementInformation);
+        if (batch == null) {
+            super.onAfterExecuteBatch(statementInformation, timeElapsedNanos, updateCounts, e);
+        } else {
+            if (e == null && updateCounts != null) {
+                batch.correctRowCount(updateCounts.length);
+            }
+            logElapsed(batch, batch.getElapsedNanos() + timeElapsedNanos, Category.BATCH, e);
+        }
+    }
+
+    @Override
+    public void onAfterStatementClose(StatementInformation statementInformation, SQLException e) {
+        if (!batches.isEmpty()) {
+            batches.remove(statementInformation);
+        }
+        if (!fetches.isEmpty()) {
+            finishFetch(fetches.remove(statementInformation));
+        }
+        super.onAfterStatementClose(statementInformation, e);
+    }
+
+    @Override
+    public void onAfterConnectionClose(ConnectionInformation connectionInformation, SQLException e) {
+        if (!batches.isEmpty()) {
+            batches.keySet().removeIf(statement -> statement.getConnectionInformation() == connectionInformation);
+        }
+        if (!fetches.isEmpty()) {
+            fetches.entrySet().removeIf(entry -> {
+                if (entry.getKey().getConnectionInformation() != connectionInformation) {
+                    return false;
+                }
+                finishFetch(entry.getValue());
+                return true;
+            });
+        }
+        super.onAfterConnectionClose(connectionInformation, e);
+    }
+
+    @Override
+    public void onAfterResultSetGet(ResultSetInformation resultSetInformation, int columnIndex, Object value, SQLException e) {
+        ResultSetSummary fetch = getFetch(resultSetInformation);
+        if (fetch != null) {
+            fetch.addValue(value);
+        }
+        if (isCategoryLoggable(LoggingSettings.getActiveInstance(), Category.RESULTSET)) {
+            super.onAfterResultSetGet(resultSetInformation, columnIndex, value, e);
+        }
+    }
+
+    @Override
+    public void onAfterResultSetGet(ResultSetInformation resultSetInformation, String columnLabel, Object value, SQLException e) {
+        ResultSetSummary fetch = getFetch(resultSetInformation);
+        if (fetch != null) {
+            fetch.addValue(value);
+        }
+        if (isCategoryLoggable(LoggingSettings.getActiveInstance(), Category.RESULTSET)) {
+            super.onAfterResultSetGet(resultSetInformation, columnLabel, value, e);
+        }
+    }
+
+    @Override
+    public void onBeforeResultSetNext(ResultSetInformation resultSetInformation) {
+        if (isCategoryLoggable(LoggingSettings.getActiveInstance(), Category.RESULTSET)) {
+            super.onBeforeResultSetNext(resultSetInformation);
+        }
+    }
+
+    @Override
+    public void onAfterResultSetNext(ResultSetInformation resultSetInformation, long timeElapsedNanos, boolean hasNext, SQLException e) {
+        ResultSetSummary fetch = getFetch(resultSetInformation);
+        if (fetch != null) {
+            fetch.addNext(timeElapsedNanos, hasNext);
+        }
+        super.onAfterResultSetNext(resultSetInformation, timeElapsedNanos, hasNext, e);
+    }
+
+    @Override
+    public void onAfterResultSetClose(ResultSetInformation resultSetInformation, SQLException e) {
+        if (getFetch(resultSetInformation) != null) {
+            finishFetch(fetches.remove(resultSetInformation.getStatementInformation()));
+        }
+        if (isCategoryLoggable(LoggingSettings.getActiveInstance(), Category.RESULTSET)) {
+            super.onAfterResultSetClose(resultSetInformation, e);
+        }
+    }
+
+    @Override
+    protected void logElapsed(Loggable loggable, long timeElapsedNanos, Category category, SQLException e) {
+        LoggingSettings settings = LoggingSettings.getActiveInstance();
+        if (e != null && getLogger(settings) instanceof FailureAwareLogger failureAware) {
+            String url = loggable.getConnectionInformation().getUrl();
+            failureAware.logFailure(loggable.getConnectionInformation().getConnectionId(), TimeUnit.NANOSECONDS.toMillis(timeElapsedNanos), category, loggable.getSqlWithValues(), (url == null) ? StringUtils.EMPTY : url, e);
+        }
+        if (meetsThreshold(timeElapsedNanos) && getPolicy(settings).isSampled(category, timeElapsedNanos) && isCategoryLoggable(settings, category)) {
+            writeElapsed(settings, loggable, timeElapsedNanos, category, e);
+        }
+    }
+
+    /**
+     * Writes the line of the event that has passed the checks
+     * <p>
+     * The {@link com.yookue.springstarter.p6spy.support.StatementFilter} is checked first, then the sql filters and the stack trace
+     * options of p6spy are honored, as same as {@link com.p6spy.engine.common.P6LogQuery} does. The lines beyond the limit of the
+     * {@link com.yookue.springstarter.p6spy.support.LogRateLimiter} are counted instead of formatted
+     *
+     * @param settings the snapshot that the event has been checked with
+     * @param loggable the source of the event
+     * @param timeElapsedNanos the elapsed time of the event in nanoseconds
+     * @param category the category of the event
+     * @param e the exception of the event, if any
+     */
+    protected void writeElapsed(LoggingSettings settings, Loggable loggable, long timeElapsedNanos, Category category, SQLException e) {
+        String sql = loggable.getSql();
+        if (!settings.getFilter().isStatementAccepted(sql) || !isSqlLoggable(sql)) {
+            return;
+        }
+        P6Logger logger = getLogger(settings);
+        LogRateLimiter limiter = LogRateLimiter.getInstance();
+        if (limiter.isEnabled() && !limiter.tryAcquire(sql, TimeUnit.NANOSECONDS.toMillis(timeElapsedNanos), logger)) {
+            return;
+        }
+        P6SpyLoadableOptions spyOptions = P6SpyOptions.getActiveInstance();
+        String now = settings.formatNow();
+        String url = loggable.getConnectionInformation().getUrl();
+        logger.logSQL(loggable.getConnectionInformation().getConnectionId(), now, TimeUnit.NANOSECONDS.toMillis(timeElapsedNanos), category, sql, loggable.getSqlWithValues(), (url == null) ? StringUtils.EMPTY : url);
+        if (spyOptions.getStackTrace()) {
+            Exception trace = new Exception();
+            String traceClass = spyOptions.getStackTraceClass();
+            if (traceClass == null || StringUtils.contains(ExceptionUtils.getStackTrace(trace), traceClass)) {
+                logger.logException(trace);
+            }
+        }
+    }
+
+    /**
+     * Returns the policy that decides whether to sample a statement
+     *
+     * @param settings the snapshot of the event
+     *
+     * @return the policy that decides whether to sample a statement
+     */
+    protected LoggingPolicy getPolicy(LoggingSettings settings) {
+        return settings.getPolicy();
+    }
+
+    /**
+     * Returns the appender that the lines are written to
+     *
+     * @param settings the snapshot of the event
+     *
+     * @return the appender that the lines are written to
+     */
+    protected P6Logger getLogger(LoggingSettings settings) {
+        return (settings.getLogger() != null) ? settings.getLogger() : P6LogQuery.getLogger();
+    }
+
+    /**
+     * Returns the categories that are never logged
+     *
+     * @param settings the snapshot of the event
+     *
+     * @return the categories that are never logged
+     */
+    protected Set<Category> getExcludedCategories(LoggingSettings settings) {
+        if (settings.getExcludedCategories() != null) {
+            return settings.getExcludedCategories();
+        }
+        P6LogLoadableOptions options = P6LogOptions.getActiveInstance();
+        return (options == null) ? null : options.getExcludeCategoriesSet();
+    }
+
+    /**
+     * Returns whether the lines of the category will be written by the appender
+     *
+     * @param settings the snapshot of the event
+     * @param category the category to check
+     *
+     * @return whether the lines of the category will be written by the appender
+     */
+    protected boolean isCategoryLoggable(LoggingSettings settings, Category category) {
+        P6Logger logger = getLogger(settings);
+        if (!settings.getFilter().isCategoryAccepted(category) || logger == null || !logger.isCategoryEnabled(category)) {
+            return false;
+        }
+        Set<Category> excludedCategories = getExcludedCategories(settings);
+        return excludedCategories == null || !excludedCategories.contains(category);
+    }
+
+    private boolean addToBatch(StatementInformation statementInformation, String sql, boolean prepared, long timeElapsedNanos, SQLException e) {
+        LoggingSettings settings = LoggingSettings.getActiveInstance();
+        if (!settings.isBatchAggregated() || e != null || !isCategoryLoggable(settings, Category.BATCH)) {
+            return false;
+        }
+        BatchSummary batch = batches.get(statementInformation);
+        if (batch == null) {
+            if (batches.size() >= settings.getBatchMaxStatements()) {
+                return false;
+            }
+            batch = new BatchSummary(statementInformation.getConnectionInformation(), sql, settings.getBatchParameterSets());
+            batches.put(statementInformation, batch);
+        }
+        String parameterSet = null;
+        if (batch.isParameterSetWanted()) {
+            parameterSet = prepared ? statementInformation.getSqlWithValues() : sql;
+        }
+        batch.addRow(parameterSet, timeElapsedNanos);
+        return true;
+    }
+
+    private void startFetch(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        LoggingSettings settings = LoggingSettings.getActiveInstance();
+        if (!settings.isFetchSummarized() || e != null || !isCategoryLoggable(settings, ResultSetSummary.FETCH)) {
+            return;
+        }
+        ResultSetSummary fetch = new ResultSetSummary(statementInformation, timeElapsedNanos, settings.getFetchLargeRows(), settings.getFetchLargeBytes());
+        if (fetches.containsKey(statementInformation) || fetches.size() < settings.getFetchMaxResultSets()) {
+            ResultSetSummary previous = fetches.put(statementInformation, fetch);
+            if (previous != null) {
+                previous.markReplaced();
+                finishFetch(previous);
+            }
+        }
+    }
+
+    private ResultSetSummary getFetch(ResultSetInformation resultSetInformation) {
+        if (fetches.isEmpty()) {
+            return null;
+        }
+        ResultSetSummary fetch = fetches.get(resultSetInformation.getStatementInformation());
+        return (fetch != null && fetch.bind(resultSetInformation)) ? fetch : null;
+    }
+
+    private void finishFetch(ResultSetSummary fetch) {
+        if (fetch == null || fetch.getResultSetInformation() == null) {
+            return;
+        }
+        LoggingSettings settings = LoggingSettings.getActiveInstance();
+        if (!fetch.isLarge()) {
+            logElapsed(fetch, fetch.getFetchNanos(), ResultSetSummary.FETCH, null);
+        } else if (isCategoryLoggable(settings, ResultSetSummary.FETCH)) {
+            writeElapsed(settings, fetch, fetch.getFetchNanos(), ResultSetSummary.FETCH, null);
+        }
+    }
+
+    private boolean meetsThreshold(long timeElapsedNanos) {
+        P6LogLoadableOptions options = P6LogOptions.getActiveInstance();
+        long threshold = (options == null) ? 0L : options.getExecutionThreshold();
+        return threshold <= 0L || TimeUnit.NANOSECONDS.toMillis(timeElapsedNanos) > threshold;
+    }
+
+    private boolean isSqlLoggable(String sql) {
+        P6LogLoadableOptions options = P6LogOptions.getActiveInstance();
+        if (StringUtils.isEmpty(sql) || options == null || !options.getFilter()) {
+            return true;
+        }
+        Pattern expressionPattern = options.getSQLExpressionPattern();
+        Pattern includeExcludePattern = options.getIncludeExcludePattern();
+        return (expressionPattern == null || expressionPattern.matcher(sql).matches()) && (includeExcludePattern == null || includeExcludePattern.matcher(sql).matches());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.metrics;
+
+
+import java.util.concurrent.TimeUnit;
+import org.springframework.util.CollectionUtils;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import com.yookue.springstarter.p6spy.support.ConnectionLeaseProfiler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+
+/**
+ * Meter binder that records the leases of {@link com.yookue.springstarter.p6spy.support.ConnectionLeaseProfiler}
+ * <p>
+ * The acquire, hold and idle times are timers, the statements per lease is a distribution summary, so the pool size can be tuned
+ * from their percentiles. The long leases are counted, and the leases in flight are gauged
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class ConnectionLeaseMetrics implements MeterBinder, ConnectionLeaseProfiler.Recorder, AutoCloseable {
+    public static final String METER_PREFIX = "p6spy.connection";    // $NON-NLS-1$
+
+    private final ConnectionLeaseProfiler profiler;
+    private final double[] percentiles;
+    private volatile MeterRegistry registry;
+    private volatile Timer acquireTimer;
+    private volatile Timer holdTimer;
+    private volatile Timer idleTimer;
+    private volatile DistributionSummary statementSummary;
+    private volatile Counter longHoldCounter;
+    private volatile Gauge leaseGauge;
+
+    public ConnectionLeaseMetrics(ConnectionLeaseProfiler profiler, P6spyProperties.Metrics properties) {
+        this.profiler = profiler;
+        percentiles = CollectionUtils.isEmpty(properties.getPercentiles()) ? new double[0] : properties.getPercentiles().stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (this.registry != null) {
+            return;
+        }
+        this.registry = registry;
+        acquireTimer = Timer.builder(METER_PREFIX + ".acquire").description("The time to get the connections").publishPercentiles(percentiles).register(registry);    // $NON-NLS-1$ // $NON-NLS-2$
+        holdTimer = Timer.builder(METER_PREFIX + ".hold").description("The time from getting the connections to closing them").publishPercentiles(percentiles).register(registry);    // $NON-NLS-1$ // $NON-NLS-2$
+        idleTimer = Timer.builder(METER_PREFIX + ".idle").description("The total idle gaps between the statements of the leases").publishPercentiles(percentiles).register(registry);    // $NON-NLS-1$ // $NON-NLS-2$
+        statementSummary = DistributionSummary.builder(METER_PREFIX + ".statements").description("The number of the statements per lease").publishPercentiles(percentiles).register(registry);    // $NON-NLS-1$ // $NON-NLS-2$
+        longHoldCounter = Counter.builder(METER_PREFIX + ".long.holds").description("The number of the leases held for at least the threshold").register(registry);    // $NON-NLS-1$ // $NON-NLS-2$
+        leaseGauge = Gauge.builder(METER_PREFIX + ".leases", profiler, ConnectionLeaseProfiler::getLeaseCount).description("The number of the leases in flight").register(registry);    // $NON-NLS-1$ // $NON-NLS-2$
+        profiler.setRecorder(this);
+    }
+
+    @Override
+    public void record(long acquireNanos, long holdNanos, long idleNanos, int statementCount, boolean longHold) {
+        Timer acquire = acquireTimer, hold = holdTimer, idle = idleTimer;
+        DistributionSummary statements = statementSummary;
+        if (acquire == null || hold == null || idle == null || statements == null) {
+            return;
+        }
+        acquire.record(acquireNanos, TimeUnit.NANOSECONDS);
+        hold.record(holdNanos, TimeUnit.NANOSECONDS);
+        idle.record(idleNanos, TimeUnit.NANOSECONDS);
+        statements.record(statementCount);
+        Counter counter = longHoldCounter;
+        if (longHold && counter != null) {
+            counter.increment();
+        }
+    }
+
+    @Override
+    public void close() {
+        profiler.setRecorder(null);
+        MeterRegistry registry = this.registry;
+        this.registry = null;
+        if (registry != null) {
+            for (Meter meter : new Meter[] {acquireTimer, holdTimer, idleTimer, statementSummary, longHoldCounter, leaseGauge}) {
+                if (meter != null) {
+                    registry.remove(meter);
+                }
+            }
+        }
+        acquireTimer = null;
+        holdTimer = null;
+        idleTimer = null;
+        statementSummary = null;
+        longHoldCounter = null;
+        leaseGauge = null;
+    }
+}
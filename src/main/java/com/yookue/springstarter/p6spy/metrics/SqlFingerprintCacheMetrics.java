@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.metrics;
+
+
+import java.util.Collections;
+import com.yookue.springstarter.p6spy.support.BoundedCache;
+import com.yookue.springstarter.p6spy.support.SqlFingerprintUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+
+/**
+ * Meter binder for the fingerprint cache of {@link com.yookue.springstarter.p6spy.support.SqlFingerprintUtils}
+ * <p>
+ * Publishes the standard {@code cache.*} meters tagged with {@code cache=p6spy.fingerprint}, plus the hit ratio
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class SqlFingerprintCacheMetrics extends CacheMeterBinder<BoundedCache<String, String>> {
+    public static final String CACHE_NAME = "p6spy.fingerprint";    // $NON-NLS-1$
+
+    public SqlFingerprintCacheMetrics() {
+        super(SqlFingerprintUtils.getCache(), CACHE_NAME, Collections.emptyList());
+    }
+
+    @Override
+    protected Long size() {
+        BoundedCache<String, String> cache = getCache();
+        return (cache == null) ? null : (long) cache.size();
+    }
+
+    @Override
+    protected long hitCount() {
+        BoundedCache<String, String> cache = getCache();
+        return (cache == null) ? 0L : cache.getHitCount();
+    }
+
+    @Override
+    protected Long missCount() {
+        BoundedCache<String, String> cache = getCache();
+        return (cache == null) ? null : cache.getMissCount();
+    }
+
+    @Override
+    protected Long evictionCount() {
+        BoundedCache<String, String> cache = getCache();
+        return (cache == null) ? null : cache.getEvictionCount();
+    }
+
+    @Override
+    protected long putCount() {
+        BoundedCache<String, String> cache = getCache();
+        return (cache == null) ? 0L : cache.getPutCount();
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        Gauge.builder("cache.hit.ratio", SqlFingerprintUtils.getCache(), BoundedCache::getHitRate)    // $NON-NLS-1$
+            .tags(getTagsWithCacheName())
+            .description("The ratio of cache hits to cache requests")    // $NON-NLS-1$
+            .register(registry);
+        Gauge.builder("cache.max.size", SqlFingerprintUtils.getCache(), BoundedCache::getMaximumSize)    // $NON-NLS-1$
+            .tags(getTagsWithCacheName())
+            .description("The maximum number of entries in the cache")    // $NON-NLS-1$
+            .register(registry);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.metrics;
+
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.CollectionUtils;
+import com.p6spy.engine.common.ConnectionInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import com.p6spy.engine.logging.Category;
+import com.yookue.springstarter.p6spy.listener.DelegatingJdbcEventListener;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import com.yookue.springstarter.p6spy.support.SqlFingerprintUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+
+/**
+ * Meter binder that records the execution time of statements into timers tagged by fingerprint and category
+ * <p>
+ * The percentiles are computed by Micrometer with HdrHistogram recorders, whose recording is wait-free. The number of
+ * timers is capped, statements beyond the cap are recorded into the {@code other} timer of their category, and timers
+ * that have been idle are removed from the registry by a sweep piggybacked on recording
+ * <p>
+ * A slot under the cap is reserved atomically before a timer is created, so the cap is never exceeded. A recording that raced with
+ * the sweep finds its timer marked as removed afterwards, and is recorded again into the timer that replaces it, so it is not lost
+ * <p>
+ * Once bound, the binder registers itself to {@link com.yookue.springstarter.p6spy.listener.DelegatingJdbcEventListener},
+ * so it records the statements even if the text logging is turned off
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class StatementTimerMetrics extends SimpleJdbcEventListener implements MeterBinder, AutoCloseable {
+    public static final String METER_NAME = "p6spy.statement";    // $NON-NLS-1$
+    private static final String OTHER_SQL = "other";    // $NON-NLS-1$
+    private static final String NONE_SQL = "none";    // $NON-NLS-1$
+    private static final long TOUCH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    private final ConcurrentMap<Category, ConcurrentMap<String, Series>> series = new ConcurrentHashMap<>();
+    private final AtomicInteger seriesCount = new AtomicInteger();
+    private final AtomicLong nextSweepNanos = new AtomicLong(System.nanoTime());
+    private final double[] percentiles;
+    private final int maxSeries;
+    private final long idleNanos;
+    private final int maxSqlLength;
+    private volatile MeterRegistry registry;
+
+    public StatementTimerMetrics(P6spyProperties.Metrics properties) {
+        percentiles = CollectionUtils.isEmpty(properties.getPercentiles()) ? new double[0] : properties.getPercentiles().stream().mapToDouble(Double::doubleValue).toArray();
+        maxSeries = Math.max(ObjectUtils.defaultIfNull(properties.getMaxSeries(), 0), 0);
+        idleNanos = (properties.getIdleTimeout() == null) ? 0L : Math.max(properties.getIdleTimeout().toNanos(), 0L);
+        maxSqlLength = Math.max(ObjectUtils.defaultIfNull(properties.getMaxSqlLength(), 0), 4);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (this.registry == null) {
+            this.registry = registry;
+            DelegatingJdbcEventListener.register(this);
+        }
+    }
+
+    @Override
+    public void close() {
+        DelegatingJdbcEventListener.unregister(this);
+        MeterRegistry registry = this.registry;
+        this.registry = null;
+        if (registry != null) {
+            series.values().forEach(bucket -> bucket.values().forEach(holder -> registry.remove(holder.timer)));
+        }
+        series.clear();
+        seriesCount.set(0);
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        record(Category.STATEMENT, statementInformation.getSql(), timeElapsedNanos);
+    }
+
+    @Override
+    public void onAfterExecuteBatch(StatementInformation statementInformation, long timeElapsedNanos, int[] updateCounts, SQLException e) {
+        record(Category.BATCH, statementInformation.getSql(), timeElapsedNanos);
+    }
+
+    @Override
+    public void onAfterCommit(ConnectionInformation connectionInformation, long timeElapsedNanos, SQLException e) {
+        record(Category.COMMIT, null, timeElapsedNanos);
+    }
+
+    @Override
+    public void onAfterRollback(ConnectionInformation connectionInformation, long timeElapsedNanos, SQLException e) {
+        record(Category.ROLLBACK, null, timeElapsedNanos);
+    }
+
+    /**
+     * Returns the number of fingerprint timers, excluding the {@code other} timers
+     *
+     * @return the number of fingerprint timers, excluding the {@code other} timers
+     */
+    public int getSeriesCount() {
+        return seriesCount.get();
+    }
+
+    private void record(Category category, String sql, long timeElapsedNanos) {
+        MeterRegistry registry = this.registry;
+        if (registry == null || timeElapsedNanos < 0L) {
+            return;
+        }
+        String fingerprint = StringUtils.defaultIfBlank(SqlFingerprintUtils.fingerprint(sql), NONE_SQL);
+        ConcurrentMap<String, Series> bucket = series.get(category);
+        if (bucket == null) {
+            bucket = series.computeIfAbsent(category, key -> new ConcurrentHashMap<>());
+        }
+        Series holder = resolveSeries(registry, category, bucket, fingerprint);
+        holder.timer.record(timeElapsedNanos, TimeUnit.NANOSECONDS);
+        if (holder.removed) {
+            holder = resolveSeries(registry, category, bucket, fingerprint);
+            holder.timer.record(timeElapsedNanos, TimeUnit.NANOSECONDS);
+        }
+        long now = System.nanoTime();
+        if (now - holder.lastRecordedNanos > TOUCH_INTERVAL_NANOS) {
+            holder.lastRecordedNanos = now;
+        }
+        if (idleNanos > 0L) {
+            sweepIfDue(registry, now);
+        }
+    }
+
+    private Series resolveSeries(MeterRegistry registry, Category category, ConcurrentMap<String, Series> bucket, String fingerprint) {
+        Series holder = bucket.get(fingerprint);
+        if (holder != null) {
+            return holder;
+        }
+        holder = bucket.computeIfAbsent(fingerprint, key -> reserveSeries() ? new Series(buildTimer(registry, category, key)) : null);
+        if (holder != null) {
+            return holder;
+        }
+        return bucket.computeIfAbsent(OTHER_SQL, key -> new Series(buildTimer(registry, category, key)));
+    }
+
+    private boolean reserveSeries() {
+        int count;
+        do {
+            count = seriesCount.get();
+            if (count >= maxSeries) {
+                return false;
+            }
+        } while (!seriesCount.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    private Timer buildTimer(MeterRegistry registry, Category category, String fingerprint) {
+        return Timer.builder(METER_NAME)
+            .tag("sql", StringUtils.abbreviate(fingerprint, maxSqlLength))    // $NON-NLS-1$
+            .tag("category", category.getName())    // $NON-NLS-1$
+            .description("The execution time of the statements")    // $NON-NLS-1$
+            .publishPercentiles(percentiles)
+            .register(registry);
+    }
+
+    private void sweepIfDue(MeterRegistry registry, long now) {
+        long next = nextSweepNanos.get();
+        if (now - next < 0L || !nextSweepNanos.compareAndSet(next, now + Math.max(idleNanos / 4L, TOUCH_INTERVAL_NANOS))) {
+            return;
+        }
+        for (ConcurrentMap<String, Series> bucket : series.values()) {
+            for (Map.Entry<String, Series> entry : bucket.entrySet()) {
+                Series holder = entry.getValue();
+                if (now - holder.lastRecordedNanos > idleNanos && bucket.remove(entry.getKey(), holder)) {
+                    registry.remove(holder.timer);
+                    holder.removed = true;
+                    if (!StringUtils.equals(entry.getKey(), OTHER_SQL)) {
+                        seriesCount.decrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Series {
+        private final Timer timer;
+        private volatile long lastRecordedNanos = System.nanoTime();
+        private volatile boolean removed;
+
+        private Series(Timer timer) {
+            this.timer = timer;
+        }
+    }
+}
@@ -18,14 +18,18 @@ package com.yookue.springstarter.p6spy.property;
 
 
 import java.io.Serializable;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import javax.sql.DataSource;
 import org.springframework.boot.context.properties.ConfigurationProperties;
-import com.p6spy.engine.spy.P6SpyOptions;
+import org.springframework.util.unit.DataSize;
 import com.p6spy.engine.spy.appender.MessageFormattingStrategy;
 import com.p6spy.engine.spy.appender.P6Logger;
 import com.p6spy.engine.spy.appender.Slf4JLogger;
-import com.yookue.commonplexus.javaseutil.annotation.PropertyAlias;
 import com.yookue.springstarter.p6spy.config.P6spyAutoConfiguration;
+import com.yookue.springstarter.p6spy.enumeration.OverflowPolicy;
+import com.yookue.springstarter.p6spy.enumeration.StatementType;
 import com.yookue.springstarter.p6spy.strategy.CompactSingleLineFormat;
 import lombok.Getter;
 import lombok.Setter;
@@ -57,7 +61,6 @@ public class P6spyProperties implements Serializable {
     /**
      * For flushing per statement
      */
-    @PropertyAlias(value = P6SpyOptions.AUTOFLUSH)
     private Boolean autoFlush;
 
     /**
@@ -66,25 +69,29 @@ public class P6spyProperties implements Serializable {
      * Note: This is normally only needed when using P6Spy in an application server environment with a JNDI data source or when
      * using a JDBC driver that does not implement the JDBC 4.0 API (specifically automatic registration).
      */
-    @PropertyAlias(value = P6SpyOptions.DRIVERLIST)
     private String driverList;
 
     /**
      * Name of logfile to use
      * <p>
-     * Used for {@code com.p6spy.engine.spy.appender.FileLogger} only
+     * Used for {@code com.p6spy.engine.spy.appender.FileLogger} and {@code com.yookue.springstarter.p6spy.appender.RollingFileLogger} only
      * <p>
      * Default is {@code "p6spy.log"}
      * <p>
      * Note: Windows users should make sure to use forward slashes (/) in their pathname
      */
-    @PropertyAlias(value = P6SpyOptions.LOGFILE)
     private String logFile;
 
     /**
      * Class to use for formatting log messages
      * <p>
      * The original default is {@code com.p6spy.engine.spy.appender.SingleLineFormat}
+     * <pre><code>
+     * logMessageFormat = com.p6spy.engine.spy.appender.SingleLineFormat
+     * logMessageFormat = com.p6spy.engine.spy.appender.CustomLineFormat
+     * logMessageFormat = com.yookue.springstarter.p6spy.strategy.CompactSingleLineFormat
+     * logMessageFormat = com.yookue.springstarter.p6spy.strategy.JsonLineFormat
+     * </code></pre>
      */
     private Class<? extends MessageFormattingStrategy> logMessageFormat = CompactSingleLineFormat.class;
 
@@ -102,7 +109,6 @@ public class P6spyProperties implements Serializable {
      * <p>
      * Default is {@code "yyyy-MM-dd HH:mm:ss"}
      */
-    @PropertyAlias(value = P6SpyOptions.DATEFORMAT)
     private String dateFormat;
 
     /**
@@ -118,6 +124,11 @@ public class P6spyProperties implements Serializable {
      * appender = com.p6spy.engine.spy.appender.Slf4JLogger
      * appender = com.p6spy.engine.spy.appender.StdoutLogger
      * appender = com.p6spy.engine.spy.appender.FileLogger
+     * appender = com.yookue.springstarter.p6spy.appender.AsyncBatchLogger
+     * appender = com.yookue.springstarter.p6spy.appender.ConsoleLogger
+     * appender = com.yookue.springstarter.p6spy.appender.FlightRecorderLogger
+     * appender = com.yookue.springstarter.p6spy.appender.RingBufferLogger
+     * appender = com.yookue.springstarter.p6spy.appender.RollingFileLogger
      * </code></pre>
      */
     private Class<? extends P6Logger> appender = Slf4JLogger.class;
@@ -133,27 +144,26 @@ public class P6spyProperties implements Serializable {
      * <br>
      * Unlike the other properties, activation of the changes on this one requires reload
      */
-    @PropertyAlias(value = P6SpyOptions.MODULELIST)
     private String moduleList;
 
     /**
      * Prints a stack trace for every statement logged
      */
-    @PropertyAlias(value = P6SpyOptions.STACKTRACE)
     private Boolean stackTrace;
 
     /**
      * If stacktrace is {@code true}, specifies the stack trace to print
      */
-    @PropertyAlias(value = P6SpyOptions.STACKTRACECLASS)
     private Class<?> stackTraceClass;
 
     /**
      * Determines if property file should be reloaded
      * <p>
      * Note: reload means forgetting all the previously settings (even those set during runtime - via JMX) and starting with the clean table
+     * <p>
+     * Polls the property file in a thread of p6spy and reloads all the modules on change. With {@code spring-cloud-context} on the
+     * classpath, the changed {@code spring.p6spy} properties are applied without polling and without reload, keep this disabled then
      */
-    @PropertyAlias(value = P6SpyOptions.RELOADPROPERTIES)
     private Boolean reloadProperties;
 
     /**
@@ -161,7 +171,6 @@ public class P6spyProperties implements Serializable {
      * <p>
      * Default is {@code 60}
      */
-    @PropertyAlias(value = P6SpyOptions.RELOADPROPERTIESINTERVAL)
     private Integer reloadPropertiesInterval;
 
     /**
@@ -186,7 +195,6 @@ public class P6spyProperties implements Serializable {
      * jndiContextCustom = java.naming.factory.url.pkgs;org.jboss.naming:org.jnp.interfaces
      * </code></pre>
      */
-    @PropertyAlias(value = P6SpyOptions.JNDICONTEXTFACTORY)
     private String jndiContextFactory;
 
     /**
@@ -211,7 +219,6 @@ public class P6spyProperties implements Serializable {
      * jndiContextCustom = java.naming.factory.url.pkgs;org.jboss.naming:org.jnp.interfaces
      * </code></pre>
      */
-    @PropertyAlias(value = P6SpyOptions.JNDICONTEXTPROVIDERURL)
     private String jndiContextProviderUrl;
 
     /**
@@ -236,7 +243,6 @@ public class P6spyProperties implements Serializable {
      * jndiContextCustom = java.naming.factory.url.pkgs;org.jboss.naming:org.jnp.interfaces
      * </code></pre>
      */
-    @PropertyAlias(value = P6SpyOptions.JNDICONTEXTCUSTOM)
     private String jndiContextCustom;
 
     /**
@@ -253,7 +259,6 @@ public class P6spyProperties implements Serializable {
      * realDatasource = /RealMySqlDS
      * </code></pre>
      */
-    @PropertyAlias(value = P6SpyOptions.REALDATASOURCE)
     private String realDatasource;
 
     /**
@@ -264,7 +269,6 @@ public class P6spyProperties implements Serializable {
      * realDatasourceClass = com.mysql.jdbc.jdbc2.optional.MysqlDataSource
      * </code></pre>
      */
-    @PropertyAlias(value = P6SpyOptions.REALDATASOURCECLASS)
     private Class<? extends DataSource> realDatasourceClass;
 
     /**
@@ -279,7 +283,6 @@ public class P6spyProperties implements Serializable {
      * realDatasourceProperties = port;3306,serverName;host,databaseName;jbossdb,foo;bar
      * </code></pre>
      */
-    @PropertyAlias(value = P6SpyOptions.REALDATASOURCEPROPERTIES)
     private String realDatasourceProperties;
 
     /**
@@ -341,4 +344,771 @@ public class P6spyProperties implements Serializable {
      * Note, if there is already such a name in use it would be unregistered first (the last registered wins)
      */
     private String jmxPrefix;
+
+    /**
+     * Statements that take at least this time in milliseconds are always logged, faster ones are logged by {@code sampleRate}
+     * <p>
+     * Default is {@code 0}, which logs every statement
+     */
+    private Long minElapsedMs = 0L;
+
+    /**
+     * Per category overrides of {@code minElapsedMs}, keyed by the category name, such as {@code statement}, {@code batch},
+     * {@code commit}, {@code rollback}, {@code resultset} and {@code result}
+     */
+    private Map<String, Long> categoryMinElapsedMs;
+
+    /**
+     * Fraction of the statements faster than the elapsed threshold to log, between {@code 0.0} and {@code 1.0}
+     * <p>
+     * Default is {@code 0.0}, for example, {@code minElapsedMs = 100} and {@code sampleRate = 0.01} logs 1% of the fast statements
+     * plus all the slow ones
+     */
+    private Double sampleRate = 0.0D;
+
+    /**
+     * Categories that are never logged, such as {@code info}, {@code debug}, {@code result}, {@code resultset} and {@code batch}
+     * <p>
+     * Falls back to the {@code excludecategories} of p6spy if absent
+     */
+    private List<String> excludeCategories;
+
+    /**
+     * Properties for the async appender
+     */
+    private final Async async = new Async();
+
+    /**
+     * Properties for the rolling file appender
+     */
+    private final RollingFile rollingFile = new RollingFile();
+
+    /**
+     * Properties for the SQL fingerprints
+     */
+    private final Fingerprint fingerprint = new Fingerprint();
+
+    /**
+     * Properties for the statement metrics
+     */
+    private final Metrics metrics = new Metrics();
+
+    /**
+     * Properties for the slow statement tracker
+     */
+    private final SlowStatements slowStatements = new SlowStatements();
+
+    /**
+     * Properties for the repeated statement detector
+     */
+    private final RepeatedStatements repeatedStatements = new RepeatedStatements();
+
+    /**
+     * Properties for wrapping the data source beans
+     */
+    private final DatasourceWrapper datasourceWrapper = new DatasourceWrapper();
+
+    /**
+     * Overrides for the data sources wrapped by {@code datasourceWrapper}, keyed by the bean names
+     * <p>
+     * The overrides are resolved once when a data source is wrapped, the absent ones fall back to the global properties
+     */
+    private Map<String, DatasourceOverride> datasources;
+
+    /**
+     * Properties for applying the changed properties on environment changes
+     */
+    private final Refresh refresh = new Refresh();
+
+    /**
+     * Properties for emitting the statements as flight recorder events
+     */
+    private final Jfr jfr = new Jfr();
+
+    /**
+     * Properties for logging the JDBC batches
+     */
+    private final Batch batch = new Batch();
+
+    /**
+     * Properties for filtering the statements by their categories, types and tables
+     */
+    private final Filter filter = new Filter();
+
+    /**
+     * Properties for keeping the latest events in memory, and dumping them on triggers
+     */
+    private final Ring ring = new Ring();
+
+    /**
+     * Properties for limiting the lines of the same statement shape
+     */
+    private final RateLimit rateLimit = new RateLimit();
+
+    /**
+     * Properties for summarizing the fetches of the result sets
+     */
+    private final Fetch fetch = new Fetch();
+
+    /**
+     * Properties for the connection lease profiler
+     */
+    private final ConnectionLeases connectionLeases = new ConnectionLeases();
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.appender.AsyncBatchLogger}
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Async implements Serializable {
+        /**
+         * The appender that the background thread writes the events to
+         * <p>
+         * Default is {@code com.p6spy.engine.spy.appender.Slf4JLogger}
+         */
+        private Class<? extends P6Logger> delegate = Slf4JLogger.class;
+
+        /**
+         * Capacity of the ring buffer, rounded up to a power of two
+         * <p>
+         * Default is {@code 8192}
+         */
+        private Integer bufferSize = 8192;
+
+        /**
+         * Maximum number of events to write per batch
+         * <p>
+         * Default is {@code 256}
+         */
+        private Integer batchSize = 256;
+
+        /**
+         * What to do with an incoming event when the ring buffer is full
+         * <p>
+         * Default is {@code block}
+         */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+        /**
+         * Maximum time to wait for the buffered events to be drained on shutdown, the default is used if it is not positive
+         * <p>
+         * Default is {@code 5s}
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(5L);
+    }
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.appender.RollingFileLogger}
+     * <p>
+     * The file name is {@code logFile}, and whether to truncate it on startup is {@code append}
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class RollingFile implements Serializable {
+        /**
+         * Size of the direct buffer that lines are encoded into before written to the file
+         * <p>
+         * Default is {@code 256KB}
+         */
+        private DataSize bufferSize = DataSize.ofKilobytes(256L);
+
+        /**
+         * The file is rolled when it reaches this size, zero or negative means never roll by size
+         * <p>
+         * Default is {@code 100MB}
+         */
+        private DataSize maxFileSize = DataSize.ofMegabytes(100L);
+
+        /**
+         * The file is rolled at every multiple of this interval in local time, zero means never roll by time
+         * <p>
+         * Default is {@code 1d}, which rolls at every midnight
+         */
+        private Duration rollingInterval = Duration.ofDays(1L);
+
+        /**
+         * Maximum number of rolled files to keep, zero means keep all
+         * <p>
+         * Default is {@code 30}
+         */
+        private Integer maxHistory = 30;
+
+        /**
+         * Whether to compress the rolled files with gzip
+         * <p>
+         * Default is {@code true}
+         */
+        private Boolean compress = true;
+
+        /**
+         * Interval to write the buffered lines to the file, zero means only when the buffer is full
+         * <p>
+         * Default is {@code 1s}
+         */
+        private Duration flushInterval = Duration.ofSeconds(1L);
+
+        /**
+         * Maximum time to wait for the pending compressions and purges on shutdown, the default is used if it is not positive
+         * <p>
+         * Default is {@code 30s}
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(30L);
+    }
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.support.SqlFingerprintUtils}
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Fingerprint implements Serializable {
+        /**
+         * Maximum number of raw statements whose fingerprints are cached, zero disables the cache
+         * <p>
+         * Default is {@code 2048}
+         */
+        private Integer cacheSize = 2048;
+    }
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.metrics.StatementTimerMetrics}
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Metrics implements Serializable {
+        /**
+         * Indicates whether to record the execution time per fingerprint and category, if Micrometer is present
+         * <p>
+         * Default is {@code true}
+         */
+        private Boolean enabled = true;
+
+        /**
+         * Percentiles to publish for each timer
+         * <p>
+         * Default is {@code 0.5, 0.95, 0.99}
+         */
+        private List<Double> percentiles = List.of(0.5D, 0.95D, 0.99D);
+
+        /**
+         * Maximum number of fingerprint timers, statements beyond it are recorded into the {@code other} timer of the category
+         * <p>
+         * Default is {@code 500}
+         */
+        private Integer maxSeries = 500;
+
+        /**
+         * Timers that have not recorded for this duration are removed from the registry, zero means never remove
+         * <p>
+         * Default is {@code 10m}
+         */
+        private Duration idleTimeout = Duration.ofMinutes(10L);
+
+        /**
+         * Maximum length of the fingerprint in the {@code sql} tag, longer ones are abbreviated
+         * <p>
+         * Default is {@code 256}
+         */
+        private Integer maxSqlLength = 256;
+    }
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.support.SlowStatementTracker}
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class SlowStatements implements Serializable {
+        /**
+         * Indicates whether to track the slowest statements for the {@code p6spy} actuator endpoint
+         * <p>
+         * Default is {@code true}
+         */
+        private Boolean enabled = true;
+
+        /**
+         * Maximum number of statements to report
+         * <p>
+         * Default is {@code 20}
+         */
+        private Integer capacity = 20;
+
+        /**
+         * Length of the sliding window
+         * <p>
+         * Default is {@code 5m}
+         */
+        private Duration window = Duration.ofMinutes(5L);
+
+        /**
+         * Number of slots that the window is divided into, the window slides by one slot at a time
+         * <p>
+         * Default is {@code 5}
+         */
+        private Integer slots = 5;
+    }
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.support.RepeatedStatementDetector}
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class RepeatedStatements implements Serializable {
+        /**
+         * Indicates whether to warn about the same statement shape executed repeatedly within a transaction or a manual scope
+         * <p>
+         * Default is {@code false}
+         */
+        private Boolean enabled = false;
+
+        /**
+         * Number of executions of the same fingerprint within a scope to warn
+         * <p>
+         * Default is {@code 20}
+         */
+        private Integer threshold = 20;
+
+        /**
+         * Maximum number of distinct fingerprints to count within a scope, the others are ignored
+         * <p>
+         * Default is {@code 1024}
+         */
+        private Integer maxFingerprints = 1024;
+    }
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.support.DataSourceWrappingPostProcessor}
+     * <p>
+     * With the wrapper, the jdbc url and the driver class no longer need to be rewritten to p6spy
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class DatasourceWrapper implements Serializable {
+        /**
+         * Indicates whether to wrap the data source beans, so that their connections can be spied
+         * <p>
+         * Default is {@code false}
+         */
+        private Boolean enabled = false;
+
+        /**
+         * Names of the data source beans to wrap, empty means all
+         */
+        private List<String> includedBeanNames;
+
+        /**
+         * Names of the data source beans not to wrap
+         */
+        private List<String> excludedBeanNames;
+
+        /**
+         * Whether the new connections of the wrapped data sources are spied, it can be switched at runtime through the
+         * {@code p6spy} actuator endpoint, while the connections of the real pools are handed out directly when off
+         * <p>
+         * Default is {@code true}
+         */
+        private Boolean spying = true;
+    }
+
+
+    /**
+     * Overrides of the properties for a data source
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class DatasourceOverride implements Serializable {
+        /**
+         * Indicates whether to spy the data source, its connections are handed out straight from the pool if {@code false}
+         * <p>
+         * Default is {@code true}
+         */
+        private Boolean enabled = true;
+
+        /**
+         * The appender for the data source, falls back to {@code appender} if this, {@code logMessageFormat} and {@code logFile} are absent
+         */
+        private Class<? extends P6Logger> appender;
+
+        /**
+         * The format for the data source, falls back to {@code logMessageFormat}
+         */
+        private Class<? extends MessageFormattingStrategy> logMessageFormat;
+
+        /**
+         * The log file for the data source, falls back to {@code logFile}
+         * <p>
+         * Two appenders must not write to the same file, so it is required if the data source has its own file appender
+         */
+        private String logFile;
+
+        /**
+         * Overrides {@code minElapsedMs} for the data source
+         */
+        private Long minElapsedMs;
+
+        /**
+         * Overrides {@code categoryMinElapsedMs} for the data source
+         */
+        private Map<String, Long> categoryMinElapsedMs;
+
+        /**
+         * Overrides {@code sampleRate} for the data source
+         */
+        private Double sampleRate;
+
+        /**
+         * Categories never logged for the data source, such as {@code result} and {@code resultset}, falls back to the
+         * global {@code excludeCategories}
+         */
+        private List<String> excludeCategories;
+    }
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.support.LoggingSettingsRefresher}
+     * <p>
+     * Requires {@code spring-cloud-context}, whose {@code EnvironmentChangeEvent} triggers the refresh
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Refresh implements Serializable {
+        /**
+         * Indicates whether to apply the changed properties on environment changes or not
+         * <p>
+         * Default is {@code true}
+         */
+        private Boolean enabled = true;
+    }
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.appender.FlightRecorderLogger}
+     * <p>
+     * The thresholds and the stack traces of the events are configured in the recording settings, not here
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Jfr implements Serializable {
+        /**
+         * Indicates whether to record the sql with the bound values in the events or not
+         * <p>
+         * The bound values may contain sensitive data, the fingerprint is always recorded
+         * <p>
+         * Default is {@code false}
+         */
+        private Boolean includeSql = false;
+    }
+
+
+    /**
+     * Properties for logging the JDBC batches
+     * <p>
+     * By default, p6spy logs a line for every row added with {@code addBatch} and another one for {@code executeBatch}
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Batch implements Serializable {
+        /**
+         * Indicates whether to log a batch as one line when it is executed or not
+         * <p>
+         * The line has the row count, the total elapsed time of adding and executing the rows, and the first parameter sets
+         * <p>
+         * It is of the {@code batch} category, which is excluded by p6spy by default, see {@code excludeCategories}
+         * <p>
+         * Default is {@code false}
+         */
+        private Boolean aggregate = false;
+
+        /**
+         * The maximum number of the parameter sets in the line of a batch, zero to log the shape of the statement only
+         * <p>
+         * Default is {@code 3}
+         */
+        private Integer maxParameterSets = 3;
+
+        /**
+         * The maximum number of the batches in flight, the rows of the others are logged one by one
+         * <p>
+         * Default is {@code 1024}
+         */
+        private Integer maxStatements = 1024;
+    }
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.support.StatementFilter}
+     * <p>
+     * The rules are compiled once, and checked before the sql filters of p6spy, which run regular expressions on every statement
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Filter implements Serializable {
+        /**
+         * Categories that are logged, such as {@code statement}, {@code batch} and {@code commit}, all if empty
+         * <p>
+         * Works together with {@code excludeCategories}. An unknown category name fails the binding
+         */
+        private List<String> categories;
+
+        /**
+         * Types of the statements that are logged, all if empty
+         */
+        private List<StatementType> statementTypes;
+
+        /**
+         * Tables whose statements are logged, all if empty
+         * <p>
+         * A name is matched case-insensitively as a whole identifier, such as {@code orders} or {@code app.orders}
+         */
+        private List<String> includeTables;
+
+        /**
+         * Tables whose statements are never logged, takes precedence over {@code includeTables}
+         */
+        private List<String> excludeTables;
+    }
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.appender.RingBufferLogger}
+     * <p>
+     * The dumps are read by {@link com.yookue.springstarter.p6spy.support.RingBufferDecoder}
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Ring implements Serializable {
+        /**
+         * Size of the off-heap ring buffer, rounded up to a power of two, the oldest events are overwritten when it is full
+         * <p>
+         * Default is {@code 8MB}
+         */
+        private DataSize capacity = DataSize.ofMegabytes(8L);
+
+        /**
+         * Maximum age of the events in a dump, zero means all the events in the ring buffer
+         * <p>
+         * Default is {@code 60s}
+         */
+        private Duration maxAge = Duration.ofSeconds(60L);
+
+        /**
+         * Directory of the dumps
+         * <p>
+         * Default is the working directory
+         */
+        private String directory;
+
+        /**
+         * A statement that takes at least this time triggers a dump, zero means never
+         * <p>
+         * Default is {@code 0}
+         */
+        private Duration slowThreshold = Duration.ZERO;
+
+        /**
+         * Whether a failed statement triggers a dump
+         * <p>
+         * Default is {@code true}
+         */
+        private Boolean dumpOnFailure = true;
+
+        /**
+         * Whether to dump when the appender is closed, such as on shutdown
+         * <p>
+         * Default is {@code true}
+         */
+        private Boolean dumpOnClose = true;
+
+        /**
+         * Minimum interval between two dumps that are triggered by statements, the triggers in between are ignored
+         * <p>
+         * Default is {@code 30s}
+         */
+        private Duration minDumpInterval = Duration.ofSeconds(30L);
+    }
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.support.LogRateLimiter}
+     * <p>
+     * The statements of the same fingerprint beyond the limit are not written, but summarized once the window has passed
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class RateLimit implements Serializable {
+        /**
+         * Indicates whether to limit the lines of the same statement shape or not
+         * <p>
+         * Default is {@code false}
+         */
+        private Boolean enabled = false;
+
+        /**
+         * Maximum number of the lines of a fingerprint within a window
+         * <p>
+         * Default is {@code 10}
+         */
+        private Integer maxLines = 10;
+
+        /**
+         * Length of the window of a fingerprint
+         * <p>
+         * Default is {@code 1s}
+         */
+        private Duration window = Duration.ofSeconds(1L);
+
+        /**
+         * Maximum number of the fingerprints to track, the least recently seen ones are summarized and evicted beyond it
+         * <p>
+         * Default is {@code 10000}
+         */
+        private Integer maxFingerprints = 10000;
+    }
+
+
+    /**
+     * Properties for summarizing the fetches of the result sets
+     * <p>
+     * By default, p6spy logs a line for every row fetched in the {@code result} category, with no total of a result set
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Fetch implements Serializable {
+        /**
+         * Indicates whether to log a result set as one line when it is closed or not
+         * <p>
+         * The line has the fetched rows, the approximate bytes of the values read, the total fetch time and the time to the first row
+         * <p>
+         * It is of the {@code fetch} category, the large fetches are always logged, the others are subject to the thresholds and the
+         * sample rate, such as {@code categoryMinElapsedMs.fetch}
+         * <p>
+         * Default is {@code false}
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The number of the fetched rows that flags a result set as large, zero to not flag by rows
+         * <p>
+         * Default is {@code 10000}
+         */
+        private Long largeRows = 10000L;
+
+        /**
+         * The approximate bytes of the values read that flags a result set as large, zero to not flag by bytes
+         * <p>
+         * Default is {@code 10MB}
+         */
+        private DataSize largeBytes = DataSize.ofMegabytes(10L);
+
+        /**
+         * The maximum number of the result sets in flight, the others are not summarized
+         * <p>
+         * Default is {@code 1024}
+         */
+        private Integer maxResultSets = 1024;
+    }
+
+
+    /**
+     * Properties for {@link com.yookue.springstarter.p6spy.support.ConnectionLeaseProfiler}
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class ConnectionLeases implements Serializable {
+        /**
+         * Indicates whether to profile the time from getting a connection to closing it, the idle gaps and the statements of it
+         * <p>
+         * The leases are published as metrics if Micrometer is present
+         * <p>
+         * Default is {@code false}
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The hold time of a lease to report it with the call site that got the connection
+         * <p>
+         * Default is {@code 5s}
+         */
+        private Duration threshold = Duration.ofSeconds(5L);
+
+        /**
+         * Indicates whether to capture the call site when getting a connection or not
+         * <p>
+         * The stack is captured for every lease, as it is not known yet whether the lease will be long, which costs a stack walk
+         * per connection. Turn it on to find the call sites of the long leases
+         * <p>
+         * Default is {@code false}
+         */
+        private Boolean captureStack = false;
+
+        /**
+         * Indicates whether to log the leases through the appender of p6spy or not
+         * <p>
+         * If enabled, every lease is logged in the {@code lease} category, subject to the thresholds and the sample rate, and the
+         * long leases are always logged with their call sites. Otherwise, the long leases are warned in the application log
+         * <p>
+         * Default is {@code false}
+         */
+        private Boolean log = false;
+
+        /**
+         * Maximum number of the leases in flight, the connections beyond it are not profiled
+         * <p>
+         * Default is {@code 10000}
+         */
+        private Integer maxLeases = 10000;
+    }
 }
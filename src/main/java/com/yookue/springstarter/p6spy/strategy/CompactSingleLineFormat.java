@@ -19,21 +19,84 @@ package com.yookue.springstarter.p6spy.strategy;
 
 import org.apache.commons.lang3.StringUtils;
 import com.p6spy.engine.spy.appender.MessageFormattingStrategy;
+import com.yookue.springstarter.p6spy.support.StringBuilderPool;
 
 
 /**
  * Compact to single line strategy for p6spy
+ * <p>
+ * The statement is compacted in one pass over its characters, into a builder borrowed from a {@link com.yookue.springstarter.p6spy.support.StringBuilderPool},
+ * which produces the same output as collapsing line breaks, tabs and whitespace runs with regular expressions
  *
  * @author David Hsing
  * @see com.p6spy.engine.spy.appender.SingleLineFormat
  */
 @SuppressWarnings("unused")
 public class CompactSingleLineFormat implements MessageFormattingStrategy {
-    private static final String MESSAGE_TEMPLATE = "{connection: %d, elapsed: %d} statement: %s";    // $NON-NLS-1$
+    private static final String CONNECTION_PREFIX = "{connection: ";    // $NON-NLS-1$
+    private static final String ELAPSED_PREFIX = ", elapsed: ";    // $NON-NLS-1$
+    private static final String STATEMENT_PREFIX = "} statement: ";    // $NON-NLS-1$
+    private static final String NULL_STATEMENT = "null";    // $NON-NLS-1$
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_RETAINED_CAPACITY = 8192;
+    private static final StringBuilderPool BUILDER_POOL = new StringBuilderPool(INITIAL_CAPACITY, MAX_RETAINED_CAPACITY);
 
     @Override
     public String formatMessage(int connectionId, String currentTime, long executionTime, String category, String effectiveSql, String sql, String url) {
-        String compact = StringUtils.isBlank(sql) ? null : sql.replaceAll("(\\r?\\n|\\t)+", StringUtils.SPACE).replaceAll("\\s{2,}", StringUtils.SPACE).trim();    // $NON-NLS-1$ // $NON-NLS-2$
-        return String.format(MESSAGE_TEMPLATE, connectionId, executionTime, compact);
+        StringBuilder builder = BUILDER_POOL.acquire();
+        builder.append(CONNECTION_PREFIX).append(connectionId).append(ELAPSED_PREFIX).append(executionTime).append(STATEMENT_PREFIX);
+        if (StringUtils.isBlank(sql)) {
+            builder.append(NULL_STATEMENT);
+        } else {
+            appendCompact(builder, sql);
+        }
+        String result = builder.toString();
+        BUILDER_POOL.release(builder);
+        return result;
+    }
+
+    /**
+     * Appends the compacted form of the given sql to the builder
+     * <p>
+     * Leading and trailing control characters are trimmed, a single space or line feed or tab becomes a space,
+     * a single vertical tab or form feed or carriage return is kept, and any longer whitespace run becomes a space
+     *
+     * @param builder the builder to append to
+     * @param sql the sql to compact
+     */
+    public static void appendCompact(StringBuilder builder, String sql) {
+        if (sql == null) {
+            return;
+        }
+        int start = 0, end = sql.length();
+        while (start < end && sql.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && sql.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int segment = start;
+        for (int i = start; i < end; i++) {
+            char ch = sql.charAt(i);
+            if (!isWhitespace(ch)) {
+                continue;
+            }
+            builder.append(sql, segment, i);
+            int run = i + 1;
+            while (run < end && isWhitespace(sql.charAt(run))) {
+                run++;
+            }
+            builder.append((run - i > 1 || ch == '\n' || ch == '\t') ? ' ' : ch);
+            segment = run;
+            i = run - 1;
+        }
+        builder.append(sql, segment, end);
+    }
+
+    /**
+     * Returns whether the char is matched by {@code \s} of {@link java.util.regex.Pattern}
+     */
+    private static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
     }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.strategy;
+
+
+import org.apache.commons.lang3.StringUtils;
+import com.p6spy.engine.spy.appender.MessageFormattingStrategy;
+import com.yookue.springstarter.p6spy.support.BoundedCache;
+import com.yookue.springstarter.p6spy.support.SqlFingerprintUtils;
+import com.yookue.springstarter.p6spy.support.StringBuilderPool;
+
+
+/**
+ * JSON line strategy for p6spy
+ * <p>
+ * Every statement is formatted as one JSON object, with the fields {@code timestamp}, {@code connection}, {@code elapsed},
+ * {@code category}, {@code fingerprint}, {@code sql}, {@code url} and {@code thread}. The object is encoded by hand into
+ * a builder borrowed from a {@link com.yookue.springstarter.p6spy.support.StringBuilderPool}, without reflection or any JSON library
+ * <p>
+ * The timestamp is a number if {@code dateFormat} is absent, which makes p6spy pass the epoch milliseconds, otherwise it is a string
+ * <p>
+ * The url and the thread name repeat from line to line, so their escaped literals are cached
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.strategy.CompactSingleLineFormat
+ */
+@SuppressWarnings("unused")
+public class JsonLineFormat implements MessageFormattingStrategy {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();    // $NON-NLS-1$
+    private static final int INITIAL_CAPACITY = 512;
+    private static final int MAX_RETAINED_CAPACITY = 8192;
+    private static final StringBuilderPool BUILDER_POOL = new StringBuilderPool(INITIAL_CAPACITY, MAX_RETAINED_CAPACITY);
+    private static final BoundedCache<String, String> LITERAL_CACHE = new BoundedCache<>(1024);
+
+    @Override
+    public String formatMessage(int connectionId, String currentTime, long executionTime, String category, String effectiveSql, String sql, String url) {
+        StringBuilder builder = BUILDER_POOL.acquire();
+        builder.append("{\"timestamp\":");    // $NON-NLS-1$
+        if (StringUtils.isNumeric(currentTime)) {
+            builder.append(currentTime);
+        } else {
+            appendString(builder, currentTime);
+        }
+        builder.append(",\"connection\":").append(connectionId);    // $NON-NLS-1$
+        builder.append(",\"elapsed\":").append(executionTime);    // $NON-NLS-1$
+        builder.append(",\"category\":");    // $NON-NLS-1$
+        appendString(builder, category);
+        builder.append(",\"fingerprint\":");    // $NON-NLS-1$
+        appendString(builder, StringUtils.isBlank(effectiveSql) ? null : SqlFingerprintUtils.fingerprint(effectiveSql));
+        builder.append(",\"sql\":");    // $NON-NLS-1$
+        appendString(builder, StringUtils.isBlank(sql) ? null : sql);
+        builder.append(",\"url\":");    // $NON-NLS-1$
+        appendCachedString(builder, url);
+        builder.append(",\"thread\":");    // $NON-NLS-1$
+        appendCachedString(builder, Thread.currentThread().getName());
+        builder.append('}');
+        String result = builder.toString();
+        BUILDER_POOL.release(builder);
+        return result;
+    }
+
+    /**
+     * Appends the cached literal of the value, for the values that repeat from line to line
+     */
+    private static void appendCachedString(StringBuilder builder, String value) {
+        if (value == null) {
+            builder.append("null");    // $NON-NLS-1$
+            return;
+        }
+        builder.append(LITERAL_CACHE.get(value, key -> {
+            StringBuilder literal = new StringBuilder(key.length() + 2);
+            appendString(literal, key);
+            return literal.toString();
+        }));
+    }
+
+    /**
+     * Appends the value as a JSON string literal to the builder, or {@code null} if the value is {@code null}
+     * <p>
+     * Quotes, backslashes, control characters and the line and paragraph separators are escaped, runs of the other characters are copied at once
+     *
+     * @param builder the builder to append to
+     * @param value the value to append
+     */
+    public static void appendString(StringBuilder builder, String value) {
+        if (value == null) {
+            builder.append("null");    // $NON-NLS-1$
+            return;
+        }
+        builder.append('"');
+        int segment = 0, length = value.length();
+        for (int i = 0; i < length; i++) {
+            char ch = value.charAt(i);
+            if (ch >= ' ' && ch != '"' && ch != '\\' && ch != '\u2028' && ch != '\u2029') {
+                continue;
+            }
+            builder.append(value, segment, i);
+            switch (ch) {
+                case '"' -> builder.append("\\\"");    // $NON-NLS-1$
+                case '\\' -> builder.append("\\\\");    // $NON-NLS-1$
+                case '\n' -> builder.append("\\n");    // $NON-NLS-1$
+                case '\r' -> builder.append("\\r");    // $NON-NLS-1$
+                case '\t' -> builder.append("\\t");    // $NON-NLS-1$
+                case '\b' -> builder.append("\\b");    // $NON-NLS-1$
+                case '\f' -> builder.append("\\f");    // $NON-NLS-1$
+                default -> builder.append("\\u").append(HEX_DIGITS[(ch >> 12) & 0xF]).append(HEX_DIGITS[(ch >> 8) & 0xF]).append(HEX_DIGITS[(ch >> 4) & 0xF]).append(HEX_DIGITS[ch & 0xF]);    // $NON-NLS-1$
+            }
+            segment = i + 1;
+        }
+        builder.append(value, segment, length).append('"');
+    }
+}
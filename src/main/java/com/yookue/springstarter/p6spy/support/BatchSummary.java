@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import com.p6spy.engine.common.ConnectionInformation;
+import com.p6spy.engine.common.Loggable;
+import lombok.Getter;
+
+
+/**
+ * In-flight state of a JDBC batch, which is logged as one line when the batch is executed
+ * <p>
+ * Only the first parameter sets are kept, the rest of the rows are counted, so the state of a batch is bounded however many
+ * rows it has. A statement is used by one thread at a time, so the state is not synchronized
+ * <p>
+ * There is no event for {@link java.sql.Statement#clearBatch()}, so the rows cleared are still counted until the batch is executed,
+ * then the summary is corrected by {@link #correctRowCount(int)} with the number of the update counts
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.listener.GatedLoggingEventListener
+ */
+@SuppressWarnings("unused")
+public final class BatchSummary implements Loggable {
+    private static final String SUMMARY_PREFIX = "/* batch of ";    // $NON-NLS-1$
+    private static final String SUMMARY_ROWS = " rows";    // $NON-NLS-1$
+    private static final String SUMMARY_SHOWN = ", first ";    // $NON-NLS-1$
+    private static final String SUMMARY_SUFFIX = " */ ";    // $NON-NLS-1$
+    private static final String SET_SEPARATOR = "; ";    // $NON-NLS-1$
+
+    private final ConnectionInformation connectionInformation;
+    private final String sql;
+    private final int maxParameterSets;
+    private final List<String> parameterSets;
+
+    /**
+     * The number of the rows added to the batch
+     */
+    @Getter
+    private int rowCount;
+
+    /**
+     * The total elapsed time of adding the rows in nanoseconds
+     */
+    @Getter
+    private long elapsedNanos;
+
+    /**
+     * Constructs a summary
+     *
+     * @param connectionInformation the connection of the statement
+     * @param sql the shape of the statement, as it was prepared
+     * @param maxParameterSets the maximum number of the parameter sets to keep
+     */
+    public BatchSummary(ConnectionInformation connectionInformation, String sql, int maxParameterSets) {
+        this.connectionInformation = connectionInformation;
+        this.sql = sql;
+        this.maxParameterSets = Math.max(maxParameterSets, 0);
+        this.parameterSets = (this.maxParameterSets == 0) ? List.of() : new ArrayList<>(Math.min(this.maxParameterSets, 16));
+    }
+
+    /**
+     * Returns whether the next parameter set will be kept
+     *
+     * @return whether the next parameter set will be kept
+     */
+    public boolean isParameterSetWanted() {
+        return parameterSets.size() < maxParameterSets;
+    }
+
+    /**
+     * Adds a row to the batch
+     *
+     * @param parameterSet the sql with the bound values of the row, or {@code null} if it is not wanted
+     * @param timeElapsedNanos the elapsed time of adding the row in nanoseconds
+     */
+    public void addRow(String parameterSet, long timeElapsedNanos) {
+        rowCount++;
+        elapsedNanos += timeElapsedNanos;
+        if (parameterSet != null && isParameterSetWanted()) {
+            parameterSets.add(parameterSet);
+        }
+    }
+
+    /**
+     * Corrects the row count with the number of the rows that were executed
+     * <p>
+     * A smaller number means that the batch was cleared after some rows had been added. The cleared rows are the earliest ones,
+     * so the kept parameter sets are dropped, and the shape of the statement is logged instead
+     *
+     * @param executedCount the number of the update counts that the batch returned
+     */
+    public void correctRowCount(int executedCount) {
+        if (executedCount < 0 || executedCount == rowCount) {
+            return;
+        }
+        rowCount = executedCount;
+        if (!parameterSets.isEmpty()) {
+            parameterSets.clear();
+        }
+    }
+
+    @Override
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Returns the summary of the batch, which is the row count, followed by the kept parameter sets or the shape of the statement
+     *
+     * @return the summary of the batch
+     */
+    @Override
+    public String getSqlWithValues() {
+        StringBuilder builder = new StringBuilder(SUMMARY_PREFIX).append(rowCount).append(SUMMARY_ROWS);
+        if (parameterSets.isEmpty()) {
+            return builder.append(SUMMARY_SUFFIX).append(sql).toString();
+        }
+        builder.append(SUMMARY_SHOWN).append(parameterSets.size()).append(SUMMARY_SUFFIX);
+        for (int i = 0; i < parameterSets.size(); i++) {
+            if (i > 0) {
+                builder.append(SET_SEPARATOR);
+            }
+            builder.append(parameterSets.get(i));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public ConnectionInformation getConnectionInformation() {
+        return connectionInformation;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.springframework.util.Assert;
+
+
+/**
+ * Bounded concurrent cache with CLOCK (second chance) eviction, which approximates LRU without locking on reads
+ * <p>
+ * A hit only sets the reference bit of the entry. When the size exceeds the maximum, the insertion queue is scanned from the
+ * oldest key, referenced keys get a second chance, and the first unreferenced key is evicted
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class BoundedCache<K, V> {
+    private final ConcurrentMap<K, Node<V>> entries = new ConcurrentHashMap<>();
+    private final Queue<K> clock = new ConcurrentLinkedQueue<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder putCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final BiConsumer<? super K, ? super V> evictionListener;
+    private volatile int maximumSize;
+
+    public BoundedCache(int maximumSize) {
+        this(maximumSize, null);
+    }
+
+    /**
+     * Constructs a cache that tells the listener about the evicted entries
+     *
+     * @param maximumSize the maximum number of entries
+     * @param evictionListener the listener that is called with the evicted entries by the evicting thread, or {@code null}
+     */
+    public BoundedCache(int maximumSize, BiConsumer<? super K, ? super V> evictionListener) {
+        this.evictionListener = evictionListener;
+        setMaximumSize(maximumSize);
+    }
+
+    /**
+     * Returns the cached value of the key, or computes and caches it if absent
+     * <p>
+     * The value may be computed more than once by concurrent callers, the first cached one wins
+     *
+     * @param key the key of the value
+     * @param loader the function to compute the value
+     *
+     * @return the cached value of the key, or the computed value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Node<V> node = entries.get(key);
+        if (node != null) {
+            hitCount.increment();
+            if (!node.referenced) {
+                node.referenced = true;
+            }
+            return node.value;
+        }
+        missCount.increment();
+        V value = loader.apply(key);
+        if (maximumSize <= 0 || value == null) {
+            return value;
+        }
+        Node<V> existing = entries.putIfAbsent(key, new Node<>(value));
+        if (existing != null) {
+            return existing.value;
+        }
+        putCount.increment();
+        clock.offer(key);
+        evictIfNecessary();
+        return value;
+    }
+
+    /**
+     * Returns the cached value of the key without computing, or {@code null} if absent
+     *
+     * @param key the key of the value
+     *
+     * @return the cached value of the key without computing, or {@code null} if absent
+     */
+    public V getIfPresent(K key) {
+        Node<V> node = entries.get(key);
+        if (node == null) {
+            return null;
+        }
+        node.referenced = true;
+        return node.value;
+    }
+
+    /**
+     * Removes all the entries, the statistics are kept
+     */
+    public void clear() {
+        entries.clear();
+        clock.clear();
+    }
+
+    /**
+     * Performs the action for each entry, without marking them as referenced
+     *
+     * @param action the action to perform
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        entries.forEach((key, node) -> action.accept(key, node.value));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Sets the maximum number of entries, zero disables caching
+     *
+     * @param maximumSize the maximum number of entries
+     */
+    public void setMaximumSize(int maximumSize) {
+        Assert.isTrue(maximumSize >= 0, "Maximum size of cache must not be negative");
+        this.maximumSize = maximumSize;
+        evictIfNecessary();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getPutCount() {
+        return putCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the ratio of hits to requests, or {@code 1.0} if nothing has been requested
+     *
+     * @return the ratio of hits to requests
+     */
+    public double getHitRate() {
+        long hits = hitCount.sum(), requests = hits + missCount.sum();
+        return (requests == 0L) ? 1.0D : (double) hits / requests;
+    }
+
+    private void evictIfNecessary() {
+        while (entries.size() > maximumSize) {
+            K candidate = clock.poll();
+            if (candidate == null) {
+                return;
+            }
+            Node<V> node = entries.get(candidate);
+            if (node == null) {
+                continue;
+            }
+            if (node.referenced) {
+                node.referenced = false;
+                clock.offer(candidate);
+            } else if (entries.remove(candidate, node)) {
+                evictionCount.increment();
+                if (evictionListener != null) {
+                    evictionListener.accept(candidate, node.value);
+                }
+            }
+        }
+    }
+
+    private static final class Node<V> {
+        private final V value;
+        private volatile boolean referenced;
+
+        private Node(V value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import com.p6spy.engine.common.ConnectionInformation;
+import com.p6spy.engine.common.P6LogQuery;
+import com.p6spy.engine.common.ResultSetInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import com.p6spy.engine.logging.Category;
+import com.p6spy.engine.spy.appender.P6Logger;
+import com.yookue.springstarter.p6spy.listener.DelegatingJdbcEventListener;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+
+
+/**
+ * Listener that profiles the leases of the wrapped connections, from getting a connection to closing it
+ * <p>
+ * Each lease keeps the hold time, the idle gaps between its statements and the number of its statements in primitive fields,
+ * so the events in between allocate nothing. A gap is the time from the end of a statement, a commit, a rollback or the close
+ * of a result set, to the start of the next one or the close of the connection, such as a remote call made inside a transaction
+ * <p>
+ * When a connection is closed, the lease is handed to the {@link Recorder}, if any, and the leases held for at least the
+ * threshold are reported with the call site that got the connection
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.metrics.ConnectionLeaseMetrics
+ */
+@SuppressWarnings("unused")
+public class ConnectionLeaseProfiler extends SimpleJdbcEventListener implements AutoCloseable {
+    /**
+     * The category of the lines of the leases
+     */
+    public static final Category LEASE = new Category("lease");    // $NON-NLS-1$
+
+    private static final Log logger = LogFactory.getLog(ConnectionLeaseProfiler.class);
+    private static final String LEASE_FORMAT = "Connection held %d ms, %d statements, idle %d ms, longest idle %d ms, acquired in %d ms";    // $NON-NLS-1$
+
+    private final ConcurrentMap<ConnectionInformation, Lease> leases = new ConcurrentHashMap<>();
+    private final long thresholdNanos;
+    private final boolean captureStack;
+    private final boolean appenderLogged;
+    private final int maxLeases;
+    private volatile Recorder recorder;
+
+    public ConnectionLeaseProfiler(P6spyProperties.ConnectionLeases properties) {
+        thresholdNanos = (properties.getThreshold() == null) ? 0L : Math.max(properties.getThreshold().toNanos(), 0L);
+        captureStack = BooleanUtils.isTrue(properties.getCaptureStack());
+        appenderLogged = BooleanUtils.isTrue(properties.getLog());
+        maxLeases = Math.max(ObjectUtils.defaultIfNull(properties.getMaxLeases(), 0), 0);
+    }
+
+    /**
+     * Starts receiving the events of all the connections
+     */
+    public void start() {
+        DelegatingJdbcEventListener.register(this);
+    }
+
+    @Override
+    public void close() {
+        DelegatingJdbcEventListener.unregister(this);
+        leases.clear();
+    }
+
+    /**
+     * Sets the recorder that receives every lease when its connection is closed
+     *
+     * @param recorder the recorder, or {@code null} to remove it
+     */
+    public void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Returns the number of the leases in flight
+     *
+     * @return the number of the leases in flight
+     */
+    public int getLeaseCount() {
+        return leases.size();
+    }
+
+    /**
+     * Returns the hold time of a lease to report it, in nanoseconds
+     *
+     * @return the hold time of a lease to report it, in nanoseconds
+     */
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    @Override
+    public void onAfterGetConnection(ConnectionInformation connectionInformation, SQLException e) {
+        if (e == null && connectionInformation != null && leases.size() < maxLeases) {
+            Exception callSite = captureStack ? new Exception("Call site of the connection lease") : null;    // $NON-NLS-1$
+            leases.put(connectionInformation, new Lease(System.nanoTime(), connectionInformation.getTimeToGetConnectionNs(), callSite));
+        }
+    }
+
+    @Override
+    public void onBeforeAnyExecute(StatementInformation statementInformation) {
+        Lease lease = getLease(statementInformation.getConnectionInformation());
+        if (lease != null) {
+            lease.begin(System.nanoTime(), true);
+        }
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        Lease lease = getLease(statementInformation.getConnectionInformation());
+        if (lease != null) {
+            lease.end(System.nanoTime());
+        }
+    }
+
+    @Override
+    public void onBeforeCommit(ConnectionInformation connectionInformation) {
+        Lease lease = getLease(connectionInformation);
+        if (lease != null) {
+            lease.begin(System.nanoTime(), false);
+        }
+    }
+
+    @Override
+    public void onAfterCommit(ConnectionInformation connectionInformation, long timeElapsedNanos, SQLException e) {
+        Lease lease = getLease(connectionInformation);
+        if (lease != null) {
+            lease.end(System.nanoTime());
+        }
+    }
+
+    @Override
+    public void onBeforeRollback(ConnectionInformation connectionInformation) {
+        Lease lease = getLease(connectionInformation);
+        if (lease != null) {
+            lease.begin(System.nanoTime(), false);
+        }
+    }
+
+    @Override
+    public void onAfterRollback(ConnectionInformation connectionInformation, long timeElapsedNanos, SQLException e) {
+        Lease lease = getLease(connectionInformation);
+        if (lease != null) {
+            lease.end(System.nanoTime());
+        }
+    }
+
+    @Override
+    public void onAfterResultSetClose(ResultSetInformation resultSetInformation, SQLException e) {
+        Lease lease = getLease(resultSetInformation.getConnectionInformation());
+        if (lease != null) {
+            lease.end(System.nanoTime());
+        }
+    }
+
+    @Override
+    public void onAfterConnectionClose(ConnectionInformation connectionInformation, SQLException e) {
+        Lease lease = leases.isEmpty() ? null : leases.remove(connectionInformation);
+        if (lease == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        lease.begin(now, false);
+        long holdNanos = now - lease.openNanos;
+        boolean longHold = thresholdNanos > 0L && holdNanos >= thresholdNanos;
+        Recorder current = recorder;
+        if (current != null) {
+            current.record(Math.max(lease.acquireNanos, 0L), holdNanos, lease.idleNanos, lease.statementCount, longHold);
+        }
+        if (appenderLogged) {
+            logLease(connectionInformation, lease, holdNanos, longHold);
+        } else if (longHold && logger.isWarnEnabled()) {
+            logger.warn(formatLease(lease, holdNanos), lease.callSite);
+        }
+    }
+
+    private Lease getLease(ConnectionInformation connectionInformation) {
+        return (leases.isEmpty() || connectionInformation == null) ? null : leases.get(connectionInformation);
+    }
+
+    private void logLease(ConnectionInformation connectionInformation, Lease lease, long holdNanos, boolean longHold) {
+        LoggingSettings settings = LoggingSettings.getActiveInstance();
+        P6Logger appender = (settings.getLogger() != null) ? settings.getLogger() : P6LogQuery.getLogger();
+        if (appender == null || !appender.isCategoryEnabled(LEASE) || !settings.getFilter().isCategoryAccepted(LEASE)) {
+            return;
+        }
+        boolean excluded = settings.getExcludedCategories() != null && settings.getExcludedCategories().contains(LEASE);
+        if (!longHold && (excluded || !settings.getPolicy().isSampled(LEASE, holdNanos))) {
+            return;
+        }
+        String url = connectionInformation.getUrl();
+        String message = formatLease(lease, holdNanos);
+        appender.logSQL(connectionInformation.getConnectionId(), settings.formatNow(), TimeUnit.NANOSECONDS.toMillis(holdNanos), LEASE, message, message, (url == null) ? StringUtils.EMPTY : url);
+        if (longHold && lease.callSite != null) {
+            appender.logException(lease.callSite);
+        }
+    }
+
+    private static String formatLease(Lease lease, long holdNanos) {
+        return String.format(LEASE_FORMAT, TimeUnit.NANOSECONDS.toMillis(holdNanos), lease.statementCount, TimeUnit.NANOSECONDS.toMillis(lease.idleNanos),
+            TimeUnit.NANOSECONDS.toMillis(lease.maxIdleNanos), TimeUnit.NANOSECONDS.toMillis(Math.max(lease.acquireNanos, 0L)));
+    }
+
+
+    /**
+     * Receiver of the leases, such as a meter binder
+     */
+    public interface Recorder {
+        /**
+         * Records a lease whose connection has been closed
+         *
+         * @param acquireNanos the time to get the connection in nanoseconds
+         * @param holdNanos the time from getting the connection to closing it in nanoseconds
+         * @param idleNanos the total of the idle gaps in nanoseconds
+         * @param statementCount the number of the statements executed
+         * @param longHold whether the hold time has reached the threshold
+         */
+        void record(long acquireNanos, long holdNanos, long idleNanos, int statementCount, boolean longHold);
+    }
+
+
+    private static final class Lease {
+        private final long openNanos;
+        private final long acquireNanos;
+        private final Exception callSite;
+        private long lastActiveNanos;
+        private long idleNanos;
+        private long maxIdleNanos;
+        private int statementCount;
+
+        private Lease(long openNanos, long acquireNanos, Exception callSite) {
+            this.openNanos = openNanos;
+            this.acquireNanos = acquireNanos;
+            this.callSite = callSite;
+            this.lastActiveNanos = openNanos;
+        }
+
+        private void begin(long now, boolean statement) {
+            long gap = now - lastActiveNanos;
+            if (gap > 0L) {
+                idleNanos += gap;
+                maxIdleNanos = Math.max(maxIdleNanos, gap);
+            }
+            lastActiveNanos = now;
+            if (statement) {
+                statementCount++;
+            }
+        }
+
+        private void end(long now) {
+            lastActiveNanos = now;
+        }
+    }
+}
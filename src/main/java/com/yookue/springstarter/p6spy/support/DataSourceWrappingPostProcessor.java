@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sql.DataSource;
+import org.apache.commons.lang3.BooleanUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.lang.NonNull;
+import com.p6spy.engine.spy.P6DataSource;
+import com.yookue.springstarter.p6spy.listener.DataSourceJdbcEventListenerFactory;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+
+
+/**
+ * Bean post processor that wraps the data source beans in {@link com.yookue.springstarter.p6spy.support.SwitchableSpyDataSource}
+ * <p>
+ * The overrides under {@code spring.p6spy.datasources.<bean-name>} are resolved once here, into a
+ * {@link com.yookue.springstarter.p6spy.listener.DataSourceJdbcEventListenerFactory} of the data source.
+ * A data source whose own appender would write to the file of another appender is rejected.
+ * Data sources that are already spied, such as by {@link com.p6spy.engine.spy.P6DataSource}, are left as they are. Note the
+ * wrapped beans are no longer instances of their original classes, exclude the ones that are injected by their concrete types
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class DataSourceWrappingPostProcessor implements BeanPostProcessor, Ordered {
+    private final P6spyProperties properties;
+    private final Set<String> includedBeanNames;
+    private final Set<String> excludedBeanNames;
+    private final Set<Path> claimedLogPaths = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructs a post processor
+     *
+     * @param properties the properties of the starter, which select the beans to wrap and carry the overrides of them
+     */
+    public DataSourceWrappingPostProcessor(P6spyProperties properties) {
+        this.properties = properties;
+        P6spyProperties.DatasourceWrapper wrapper = properties.getDatasourceWrapper();
+        this.includedBeanNames = (wrapper.getIncludedBeanNames() == null) ? Set.of() : new HashSet<>(wrapper.getIncludedBeanNames());
+        this.excludedBeanNames = (wrapper.getExcludedBeanNames() == null) ? Set.of() : new HashSet<>(wrapper.getExcludedBeanNames());
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(@NonNull Object bean, @NonNull String beanName) throws BeansException {
+        if (!(bean instanceof DataSource dataSource) || !isSelected(beanName) || isSpied(dataSource)) {
+            return bean;
+        }
+        P6spyProperties.DatasourceOverride override = (properties.getDatasources() == null) ? null : properties.getDatasources().get(beanName);
+        if (override == null) {
+            return new SwitchableSpyDataSource(dataSource);
+        }
+        if (DataSourceJdbcEventListenerFactory.hasOwnLogger(override)) {
+            claimLogFile(beanName, override);
+        }
+        return new SwitchableSpyDataSource(dataSource, BooleanUtils.isNotFalse(override.getEnabled()), DataSourceJdbcEventListenerFactory.of(properties, override));
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    /**
+     * Rejects an appender of a data source that would open a second writer on a file, which interleaves the lines of both
+     */
+    private void claimLogFile(String beanName, P6spyProperties.DatasourceOverride override) {
+        Path logPath = LoggingSettings.resolveLogPath(DataSourceJdbcEventListenerFactory.overlay(properties, override));
+        if (logPath == null) {
+            return;
+        }
+        if (logPath.equals(LoggingSettings.resolveLogPath(properties)) || !claimedLogPaths.add(logPath)) {
+            String message = String.format("The p6spy appender of data source '%s' writes to '%s', which is written by another appender, specify a distinct 'spring.p6spy.datasources.%s.log-file'", beanName, logPath, beanName);    // $NON-NLS-1$
+            throw new BeanInitializationException(message);
+        }
+    }
+
+    private boolean isSelected(String beanName) {
+        return (includedBeanNames.isEmpty() || includedBeanNames.contains(beanName)) && !excludedBeanNames.contains(beanName);
+    }
+
+    private boolean isSpied(DataSource dataSource) {
+        if (dataSource instanceof P6DataSource || dataSource instanceof SwitchableSpyDataSource) {
+            return true;
+        }
+        try {
+            return dataSource.isWrapperFor(P6DataSource.class);
+        } catch (SQLException ignored) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import com.p6spy.engine.spy.appender.P6Logger;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+
+
+/**
+ * Limits the lines of the same statement shape within a time window, and summarizes the suppressed ones
+ * <p>
+ * Each fingerprint has a fixed window, in which the first lines are written and the rest are only counted. When the window has
+ * passed, a summary line of the suppressed statements is written to the appender that suppressed them, either by the next statement
+ * of the fingerprint, or by a background sweep, or when the window is evicted. The windows are kept in a
+ * {@link com.yookue.springstarter.p6spy.support.BoundedCache}, so a high diversity of statements cannot grow the state unbounded
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.property.P6spyProperties.RateLimit
+ */
+@SuppressWarnings("unused")
+public final class LogRateLimiter {
+    private static final LogRateLimiter INSTANCE = new LogRateLimiter();
+    private static final String THREAD_NAME = "p6spy-rate-limiter";    // $NON-NLS-1$
+    private static final String SUMMARY_FORMAT = "Statement repeated %d more times in %d ms, total elapsed %d ms: %s";    // $NON-NLS-1$
+    private static final Log logger = LogFactory.getLog(LogRateLimiter.class);
+
+    private final BoundedCache<String, Window> windows = new BoundedCache<>(0, (fingerprint, window) -> report(fingerprint, window, System.nanoTime() - window.startNanos.get()));
+    private final LongAdder suppressedCount = new LongAdder();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile int maxLines;
+    private volatile long windowNanos = TimeUnit.SECONDS.toNanos(1L);
+    private ScheduledExecutorService executor;
+
+    private LogRateLimiter() {
+    }
+
+    /**
+     * Returns the limiter that the logging listener uses
+     *
+     * @return the limiter that the logging listener uses
+     */
+    public static LogRateLimiter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Applies the properties, the windows in progress are kept unless the limiter is disabled
+     *
+     * @param properties the properties of the limiter
+     */
+    public void configure(P6spyProperties.RateLimit properties) {
+        boolean enabled = BooleanUtils.isTrue(properties.getEnabled());
+        long window = (properties.getWindow() == null) ? 0L : properties.getWindow().toNanos();
+        lock.lock();
+        try {
+            if (!enabled || window <= 0L) {
+                maxLines = 0;
+                stop();
+                return;
+            }
+            windowNanos = window;
+            maxLines = Math.max(ObjectUtils.defaultIfNull(properties.getMaxLines(), 1), 1);
+            windows.setMaximumSize(Math.max(ObjectUtils.defaultIfNull(properties.getMaxFingerprints(), 0), 1));
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            scheduler.scheduleWithFixedDelay(this::sweep, window, window, TimeUnit.NANOSECONDS);
+            executor = scheduler;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns whether the limiter is enabled
+     *
+     * @return whether the limiter is enabled
+     */
+    public boolean isEnabled() {
+        return maxLines > 0;
+    }
+
+    /**
+     * Returns whether the line of the statement can be written, otherwise it is counted into the summary of its fingerprint
+     *
+     * @param sql the sql of the statement, without the bound values
+     * @param elapsedMillis the elapsed time of the statement in milliseconds
+     * @param appender the appender that the line and the summary are written to
+     *
+     * @return whether the line of the statement can be written
+     */
+    public boolean tryAcquire(String sql, long elapsedMillis, P6Logger appender) {
+        int limit = maxLines;
+        if (limit <= 0) {
+            return true;
+        }
+        String fingerprint = SqlFingerprintUtils.fingerprint(sql);
+        if (fingerprint == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        Window window = windows.get(fingerprint, key -> new Window(now));
+        rollOver(fingerprint, window, now);
+        if (window.lines.incrementAndGet() <= limit) {
+            return true;
+        }
+        window.appender = appender;
+        window.suppressedCount.increment();
+        window.suppressedElapsed.add(elapsedMillis);
+        suppressedCount.increment();
+        return false;
+    }
+
+    /**
+     * Returns the number of the lines that have been suppressed
+     *
+     * @return the number of the lines that have been suppressed
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.sum();
+    }
+
+    /**
+     * Writes the summaries in progress, and stops the background sweep
+     */
+    public void close() {
+        lock.lock();
+        try {
+            stop();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        long now = System.nanoTime();
+        windows.forEach((fingerprint, window) -> report(fingerprint, window, now - window.startNanos.get()));
+        windows.clear();
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        windows.forEach((fingerprint, window) -> rollOver(fingerprint, window, now));
+    }
+
+    private void rollOver(String fingerprint, Window window, long now) {
+        long start = window.startNanos.get();
+        if (now - start >= windowNanos && window.startNanos.compareAndSet(start, now)) {
+            window.lines.set(0);
+            report(fingerprint, window, now - start);
+        }
+    }
+
+    private static void report(String fingerprint, Window window, long durationNanos) {
+        long count = window.suppressedCount.sumThenReset();
+        long elapsed = window.suppressedElapsed.sumThenReset();
+        P6Logger appender = window.appender;
+        if (count <= 0L || appender == null) {
+            return;
+        }
+        try {
+            appender.logText(String.format(SUMMARY_FORMAT, count, TimeUnit.NANOSECONDS.toMillis(durationNanos), elapsed, fingerprint));
+        } catch (RuntimeException ex) {
+            logger.warn("P6spy rate limiter failed to write summary", ex);    // $NON-NLS-1$
+        }
+    }
+
+    private static final class Window {
+        private final AtomicLong startNanos;
+        private final AtomicInteger lines = new AtomicInteger();
+        private final LongAdder suppressedCount = new LongAdder();
+        private final LongAdder suppressedElapsed = new LongAdder();
+        private volatile P6Logger appender;
+
+        private Window(long startNanos) {
+            this.startNanos = new AtomicLong(startNanos);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.CollectionUtils;
+import com.p6spy.engine.logging.Category;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+
+
+/**
+ * Immutable decisions about which statements to log, built from the starter properties
+ * <p>
+ * Statements that take at least the elapsed threshold of their category are always logged, faster ones are logged by the
+ * sample rate, which is decided with a {@link java.util.concurrent.ThreadLocalRandom} before any formatting work
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.support.LoggingSettings
+ */
+@SuppressWarnings("unused")
+public final class LoggingPolicy {
+    private static final LoggingPolicy UNRESTRICTED = new LoggingPolicy(0L, Collections.emptyMap(), 0.0D);
+
+    private final long minElapsedNanos;
+    private final Map<String, Long> categoryMinElapsedNanos;
+    private final double sampleRate;
+
+    private LoggingPolicy(long minElapsedNanos, Map<String, Long> categoryMinElapsedNanos, double sampleRate) {
+        this.minElapsedNanos = minElapsedNanos;
+        this.categoryMinElapsedNanos = categoryMinElapsedNanos;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Returns a policy that is built from the properties
+     *
+     * @param properties the properties of the starter
+     *
+     * @return a policy that is built from the properties
+     */
+    public static LoggingPolicy of(P6spyProperties properties) {
+        return of(properties.getMinElapsedMs(), properties.getCategoryMinElapsedMs(), properties.getSampleRate());
+    }
+
+    /**
+     * Returns a policy that is built from the overrides of a data source, falling back to the base policy
+     *
+     * @param base the policy to fall back to, normally the active global one
+     * @param override the overrides of a data source
+     *
+     * @return a policy that is built from the overrides of a data source, or the base policy if nothing is overridden
+     */
+    public static LoggingPolicy of(LoggingPolicy base, P6spyProperties.DatasourceOverride override) {
+        if (!isOverriding(override)) {
+            return base;
+        }
+        LoggingPolicy overrides = of(override.getMinElapsedMs(), override.getCategoryMinElapsedMs(), override.getSampleRate());
+        return new LoggingPolicy((override.getMinElapsedMs() != null) ? overrides.minElapsedNanos : base.minElapsedNanos,
+            (override.getCategoryMinElapsedMs() != null) ? overrides.categoryMinElapsedNanos : base.categoryMinElapsedNanos,
+            (override.getSampleRate() != null) ? overrides.sampleRate : base.sampleRate);
+    }
+
+    /**
+     * Returns whether the overrides of a data source have any field of a policy
+     *
+     * @param override the overrides of a data source
+     *
+     * @return whether the overrides of a data source have any field of a policy
+     */
+    public static boolean isOverriding(P6spyProperties.DatasourceOverride override) {
+        return override != null && (override.getMinElapsedMs() != null || override.getCategoryMinElapsedMs() != null || override.getSampleRate() != null);
+    }
+
+    private static LoggingPolicy of(Long minElapsedMs, Map<String, Long> categoryMinElapsedMs, Double sampleRate) {
+        long minElapsedNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(ObjectUtils.defaultIfNull(minElapsedMs, 0L), 0L));
+        Map<String, Long> categoryMinElapsedNanos = Collections.emptyMap();
+        if (!CollectionUtils.isEmpty(categoryMinElapsedMs)) {
+            categoryMinElapsedNanos = new HashMap<>(categoryMinElapsedMs.size());
+            for (Map.Entry<String, Long> entry : categoryMinElapsedMs.entrySet()) {
+                if (StringUtils.isNotBlank(entry.getKey()) && entry.getValue() != null) {
+                    categoryMinElapsedNanos.put(StringUtils.lowerCase(StringUtils.trim(entry.getKey())), TimeUnit.MILLISECONDS.toNanos(Math.max(entry.getValue(), 0L)));
+                }
+            }
+        }
+        double rate = Math.min(Math.max(ObjectUtils.defaultIfNull(sampleRate, 0.0D), 0.0D), 1.0D);
+        return new LoggingPolicy(minElapsedNanos, categoryMinElapsedNanos, rate);
+    }
+
+    /**
+     * Returns a policy that logs every statement
+     *
+     * @return a policy that logs every statement
+     */
+    public static LoggingPolicy unrestricted() {
+        return UNRESTRICTED;
+    }
+
+    /**
+     * Returns whether the statement of the category that took the elapsed time should be logged
+     *
+     * @param category the category of the statement
+     * @param elapsedNanos the elapsed time of the statement in nanoseconds
+     *
+     * @return whether the statement of the category that took the elapsed time should be logged
+     */
+    public boolean isSampled(Category category, long elapsedNanos) {
+        long threshold = minElapsedNanos;
+        if (!categoryMinElapsedNanos.isEmpty() && category != null) {
+            threshold = categoryMinElapsedNanos.getOrDefault(category.getName(), minElapsedNanos);
+        }
+        if (threshold <= 0L || elapsedNanos >= threshold) {
+            return true;
+        }
+        return sampleRate > 0.0D && (sampleRate >= 1.0D || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.CollectionUtils;
+import com.p6spy.engine.logging.Category;
+import com.p6spy.engine.spy.P6SpyOptions;
+import com.p6spy.engine.spy.appender.FileLogger;
+import com.p6spy.engine.spy.appender.FormattedLogger;
+import com.p6spy.engine.spy.appender.P6Logger;
+import com.p6spy.engine.spy.appender.Slf4JLogger;
+import com.yookue.springstarter.p6spy.appender.AsyncBatchLogger;
+import com.yookue.springstarter.p6spy.appender.PropertiesAwareLogger;
+import com.yookue.springstarter.p6spy.appender.RollingFileLogger;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import lombok.Getter;
+
+
+/**
+ * Immutable snapshot of everything the logging listener reads per statement
+ * <p>
+ * A new snapshot is published as a whole through a volatile reference, so a statement in flight sees either the old settings
+ * or the new ones, never a mix of them, and never waits for a reconfiguration
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.listener.GatedLoggingEventListener
+ * @see com.yookue.springstarter.p6spy.support.LoggingSettingsRefresher
+ */
+@Getter
+@SuppressWarnings("unused")
+public final class LoggingSettings {
+    private static volatile LoggingSettings activeInstance = new LoggingSettings(LoggingPolicy.unrestricted(), null, null, null, StatementFilter.acceptAll(), false, 0, 0, false, 0L, 0L, 0);
+
+    /**
+     * The policy that decides whether to sample a statement
+     */
+    private final LoggingPolicy policy;
+
+    /**
+     * The appender that the lines are written to, or {@code null} to use the one of p6spy
+     */
+    private final P6Logger logger;
+
+    /**
+     * The categories that are never logged, or {@code null} to use the ones of p6spy
+     */
+    private final Set<Category> excludedCategories;
+
+    /**
+     * The date format of the lines, or {@code null} to use the one of p6spy
+     */
+    private final String dateFormat;
+
+    /**
+     * The filter of the statements by their categories, types and tables
+     */
+    private final StatementFilter filter;
+
+    /**
+     * Whether a JDBC batch is logged as one line when it is executed
+     */
+    private final boolean batchAggregated;
+
+    /**
+     * The maximum number of the parameter sets in the line of a batch
+     */
+    private final int batchParameterSets;
+
+    /**
+     * The maximum number of the batches in flight, the rows of the others are logged one by one
+     */
+    private final int batchMaxStatements;
+
+    /**
+     * Whether a result set is logged as one line when it is closed
+     */
+    private final boolean fetchSummarized;
+
+    /**
+     * The number of the fetched rows that flags a result set as large, zero to not flag by rows
+     */
+    private final long fetchLargeRows;
+
+    /**
+     * The approximate bytes of the values read that flags a result set as large, zero to not flag by bytes
+     */
+    private final long fetchLargeBytes;
+
+    /**
+     * The maximum number of the result sets in flight, the others are not summarized
+     */
+    private final int fetchMaxResultSets;
+
+    public LoggingSettings(LoggingPolicy policy, P6Logger logger, Set<Category> excludedCategories, String dateFormat, StatementFilter filter, boolean batchAggregated, int batchParameterSets, int batchMaxStatements,
+        boolean fetchSummarized, long fetchLargeRows, long fetchLargeBytes, int fetchMaxResultSets) {
+        this.policy = policy;
+        this.logger = logger;
+        this.excludedCategories = excludedCategories;
+        this.dateFormat = dateFormat;
+        this.filter = filter;
+        this.batchAggregated = batchAggregated;
+        this.batchParameterSets = batchParameterSets;
+        this.batchMaxStatements = batchMaxStatements;
+        this.fetchSummarized = fetchSummarized;
+        this.fetchLargeRows = fetchLargeRows;
+        this.fetchLargeBytes = fetchLargeBytes;
+        this.fetchMaxResultSets = fetchMaxResultSets;
+    }
+
+    /**
+     * Returns a snapshot that is built from the properties
+     *
+     * @param properties the properties of the starter
+     * @param logger the appender that the lines are written to, or {@code null} to use the one of p6spy
+     *
+     * @return a snapshot that is built from the properties
+     */
+    public static LoggingSettings of(P6spyProperties properties, P6Logger logger) {
+        P6spyProperties.Batch batch = properties.getBatch();
+        P6spyProperties.Fetch fetch = properties.getFetch();
+        long largeBytes = (fetch.getLargeBytes() == null) ? 0L : Math.max(fetch.getLargeBytes().toBytes(), 0L);
+        return new LoggingSettings(LoggingPolicy.of(properties), logger, toCategories(properties.getExcludeCategories()), StringUtils.trimToNull(properties.getDateFormat()), StatementFilter.of(properties.getFilter()),
+            BooleanUtils.isTrue(batch.getAggregate()), Math.max(ObjectUtils.defaultIfNull(batch.getMaxParameterSets(), 0), 0), Math.max(ObjectUtils.defaultIfNull(batch.getMaxStatements(), 0), 0),
+            BooleanUtils.isTrue(fetch.getEnabled()), Math.max(ObjectUtils.defaultIfNull(fetch.getLargeRows(), 0L), 0L), largeBytes, Math.max(ObjectUtils.defaultIfNull(fetch.getMaxResultSets(), 0), 0));
+    }
+
+    /**
+     * Returns the snapshot that the logging listener reads
+     *
+     * @return the snapshot that the logging listener reads
+     */
+    public static LoggingSettings getActiveInstance() {
+        return activeInstance;
+    }
+
+    /**
+     * Sets the snapshot that the logging listener reads
+     *
+     * @param settings the snapshot that the logging listener reads
+     */
+    public static void setActiveInstance(LoggingSettings settings) {
+        if (settings != null) {
+            activeInstance = settings;
+        }
+    }
+
+    /**
+     * Returns the current time to write in a line
+     * <p>
+     * The time is formatted with the date format of the snapshot, or the one of p6spy, or written as the epoch millis if neither is set
+     *
+     * @return the current time to write in a line
+     */
+    public String formatNow() {
+        String format = (dateFormat != null) ? dateFormat : P6SpyOptions.getActiveInstance().getDateformat();
+        return (format == null) ? Long.toString(System.currentTimeMillis()) : new SimpleDateFormat(format).format(new Date()).trim();
+    }
+
+    /**
+     * Returns a new appender of the properties, with the log file and the formatting strategy applied
+     *
+     * @param properties the properties of the appender, which carry its class, its log file and its formatting strategy
+     *
+     * @return a new appender of the properties, with the log file and the formatting strategy applied
+     */
+    public static P6Logger newLogger(P6spyProperties properties) {
+        P6Logger logger = BeanUtils.instantiateClass(properties.getAppender());
+        if (logger instanceof FileLogger fileLogger) {
+            fileLogger.setLogfile(resolveLogFile(properties));
+        }
+        if (logger instanceof FormattedLogger formattedLogger && properties.getLogMessageFormat() != null) {
+            formattedLogger.setStrategy(BeanUtils.instantiateClass(properties.getLogMessageFormat()));
+        }
+        if (logger instanceof PropertiesAwareLogger awareLogger) {
+            awareLogger.setProperties(properties);
+        }
+        return logger;
+    }
+
+    /**
+     * Returns the log file of the properties, falling back to the one of p6spy, then to {@code spy.log}
+     *
+     * @param properties the properties of the appender
+     *
+     * @return the log file of the properties, falling back to the one of p6spy, then to {@code spy.log}
+     */
+    public static String resolveLogFile(P6spyProperties properties) {
+        if (StringUtils.isNotBlank(properties.getLogFile())) {
+            return org.springframework.util.StringUtils.cleanPath(properties.getLogFile());
+        }
+        return StringUtils.defaultIfBlank(P6SpyOptions.getActiveInstance().getLogfile(), "spy.log");    // $NON-NLS-1$
+    }
+
+    /**
+     * Returns the file that the appender of the properties writes to, or {@code null} if it writes no file
+     * <p>
+     * An async appender writes to the file of its delegate
+     *
+     * @param properties the properties of the appender
+     *
+     * @return the file that the appender of the properties writes to, or {@code null} if it writes no file
+     */
+    public static Path resolveLogPath(P6spyProperties properties) {
+        Class<? extends P6Logger> appender = properties.getAppender();
+        if (appender != null && AsyncBatchLogger.class.isAssignableFrom(appender)) {
+            appender = ObjectUtils.defaultIfNull(properties.getAsync().getDelegate(), Slf4JLogger.class);
+        }
+        if (appender == null || !(FileLogger.class.isAssignableFrom(appender) || RollingFileLogger.class.isAssignableFrom(appender))) {
+            return null;
+        }
+        return Paths.get(resolveLogFile(properties)).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Returns the categories of the names, or {@code null} if there is no name
+     *
+     * @param categoryNames the names of the categories
+     *
+     * @return the categories of the names, or {@code null} if there is no name
+     */
+    public static Set<Category> toCategories(List<String> categoryNames) {
+        if (CollectionUtils.isEmpty(categoryNames)) {
+            return null;
+        }
+        Set<Category> categories = new LinkedHashSet<>(categoryNames.size());
+        for (String categoryName : categoryNames) {
+            if (StringUtils.isNotBlank(categoryName)) {
+                categories.add(new Category(StringUtils.lowerCase(StringUtils.trim(categoryName))));
+            }
+        }
+        return Collections.unmodifiableSet(categories);
+    }
+}
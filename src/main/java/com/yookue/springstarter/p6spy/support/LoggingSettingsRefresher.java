@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.util.Objects;
+import java.util.Set;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+import com.p6spy.engine.common.P6LogQuery;
+import com.p6spy.engine.spy.appender.P6Logger;
+import com.yookue.springstarter.p6spy.appender.PropertiesAwareLogger;
+import com.yookue.springstarter.p6spy.config.P6spyAutoConfiguration;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+
+
+/**
+ * Applies the changed {@code spring.p6spy} properties when the environment changes, without reloading p6spy
+ * <p>
+ * The properties are bound afresh, and the thresholds, the sample rate, the excluded categories, the date format and the appender
+ * are published together as one {@link com.yookue.springstarter.p6spy.support.LoggingSettings}. The appender is re-created when its
+ * class or the async buffer has changed, or when the formatting strategy or the log file has changed and the appender cannot apply
+ * them in place, and the replaced one is closed afterwards. On the first replacement, the replaced one is the appender of
+ * {@link com.p6spy.engine.common.P6LogQuery}, so that two appenders never write to the same file.
+ * A kept appender that is a {@link com.yookue.springstarter.p6spy.appender.PropertiesAwareLogger} is given the refreshed properties,
+ * so the changes of its own sub-properties, such as {@code rolling-file.*} or {@code ring.*}, are applied in place
+ * <p>
+ * The overrides of the wrapped data sources are resolved once when wrapping, and are not refreshed
+ *
+ * @author David Hsing
+ * @see org.springframework.cloud.context.environment.EnvironmentChangeEvent
+ */
+@SuppressWarnings("unused")
+public class LoggingSettingsRefresher implements ApplicationListener<EnvironmentChangeEvent>, AutoCloseable {
+    private static final Log logger = LogFactory.getLog(LoggingSettingsRefresher.class);
+    private static final String KEY_PREFIX = P6spyAutoConfiguration.PROPERTIES_PREFIX + '.';
+    private static final String ENV_PREFIX = "SPRING_P6SPY_";    // $NON-NLS-1$
+
+    private final Environment environment;
+    private P6spyProperties properties;
+    private P6Logger ownedLogger;
+
+    /**
+     * Constructs a refresher
+     *
+     * @param environment the environment to bind the properties from
+     */
+    public LoggingSettingsRefresher(Environment environment) {
+        this.environment = environment;
+        this.properties = bindProperties();
+    }
+
+    @Override
+    public void onApplicationEvent(EnvironmentChangeEvent event) {
+        if (!isRelevant(event.getKeys())) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (RuntimeException ex) {
+            logger.warn("Failed to apply the changed p6spy properties, keeping the previous ones", ex);    // $NON-NLS-1$
+        }
+    }
+
+    /**
+     * Binds the properties from the environment and publishes them as a new snapshot
+     */
+    public synchronized void refresh() {
+        P6spyProperties refreshed = bindProperties();
+        P6Logger appender = LoggingSettings.getActiveInstance().getLogger();
+        P6Logger current = (appender != null) ? appender : P6LogQuery.getLogger();
+        P6Logger replaced = null;
+        boolean appenderChanged = !isSameAppender(properties, refreshed, current);
+        if (appenderChanged) {
+            appender = LoggingSettings.newLogger(refreshed);
+            replaced = (ownedLogger != null) ? ownedLogger : current;
+            ownedLogger = appender;
+        } else if (current instanceof PropertiesAwareLogger awareLogger) {
+            awareLogger.setProperties(refreshed);
+        }
+        LoggingSettings.setActiveInstance(LoggingSettings.of(refreshed, appender));
+        SwitchableSpyDataSource.setSpying(BooleanUtils.isNotFalse(refreshed.getDatasourceWrapper().getSpying()));
+        SqlFingerprintUtils.getCache().setMaximumSize(Math.max(ObjectUtils.defaultIfNull(refreshed.getFingerprint().getCacheSize(), 0), 0));
+        LogRateLimiter.getInstance().configure(refreshed.getRateLimit());
+        properties = refreshed;
+        if (logger.isInfoEnabled()) {
+            logger.info("Applied the changed p6spy properties" + (appenderChanged ? ", with appender " + appender.getClass().getName() : StringUtils.EMPTY));    // $NON-NLS-1$ // $NON-NLS-2$
+        }
+        closeQuietly(replaced);
+    }
+
+    /**
+     * Closes the appender that has been created by this refresher, if any
+     */
+    @Override
+    public synchronized void close() {
+        closeQuietly(ownedLogger);
+        ownedLogger = null;
+    }
+
+    /**
+     * Binds a new instance rather than reading the properties bean, which may be rebound in place by the same event
+     */
+    private P6spyProperties bindProperties() {
+        return Binder.get(environment).bind(P6spyAutoConfiguration.PROPERTIES_PREFIX, P6spyProperties.class).orElseGet(P6spyProperties::new);
+    }
+
+    private boolean isRelevant(Set<String> keys) {
+        if (keys == null) {
+            return false;
+        }
+        for (String key : keys) {
+            if (StringUtils.startsWith(key, KEY_PREFIX) || StringUtils.startsWithIgnoreCase(key, ENV_PREFIX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A changed log file or formatting strategy is applied in place only by the appenders that support it
+     */
+    private boolean isSameAppender(P6spyProperties previous, P6spyProperties refreshed, P6Logger current) {
+        boolean sameOutput = Objects.equals(previous.getLogMessageFormat(), refreshed.getLogMessageFormat()) && StringUtils.equals(previous.getLogFile(), refreshed.getLogFile());
+        return Objects.equals(previous.getAppender(), refreshed.getAppender()) && isSameAsync(previous.getAsync(), refreshed.getAsync())
+            && (sameOutput || (current instanceof PropertiesAwareLogger aware && aware.isOutputReconfigurable()));
+    }
+
+    /**
+     * The buffer of a running async appender cannot be resized in place, so the appender is re-created when it changes
+     */
+    private boolean isSameAsync(P6spyProperties.Async previous, P6spyProperties.Async current) {
+        return Objects.equals(previous.getDelegate(), current.getDelegate()) && Objects.equals(previous.getBufferSize(), current.getBufferSize())
+            && Objects.equals(previous.getBatchSize(), current.getBatchSize()) && previous.getOverflowPolicy() == current.getOverflowPolicy()
+            && Objects.equals(previous.getShutdownTimeout(), current.getShutdownTimeout());
+    }
+
+    private void closeQuietly(P6Logger appender) {
+        if (appender instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception ex) {
+                logger.warn("Failed to close the replaced p6spy appender", ex);    // $NON-NLS-1$
+            }
+        }
+    }
+}
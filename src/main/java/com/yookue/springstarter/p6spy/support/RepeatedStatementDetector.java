@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import com.yookue.springstarter.p6spy.listener.DelegatingJdbcEventListener;
+
+
+/**
+ * Listener that detects the N+1 pattern, the same statement shape executed repeatedly within one scope
+ * <p>
+ * A scope is either the current Spring transaction, bound through
+ * {@link org.springframework.transaction.support.TransactionSynchronizationManager}, or a manual scope of the current thread
+ * opened by {@link #openScope()}, such as around a web request. Statements outside any scope are not counted
+ * <p>
+ * Within a scope, the fingerprints are counted in a small open addressing map that is reused by the thread, keyed by the
+ * fingerprint itself, with its hash code stored alongside to skip most of the comparisons, so counting allocates nothing. When a fingerprint reaches the threshold, the calling stack is captured once, and a single
+ * warning with the final count is logged when the scope ends
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class RepeatedStatementDetector extends SimpleJdbcEventListener implements AutoCloseable {
+    private static final Log logger = LogFactory.getLog(RepeatedStatementDetector.class);
+    private static final boolean TRANSACTION_PRESENT = ClassUtils.isPresent("org.springframework.transaction.support.TransactionSynchronizationManager", RepeatedStatementDetector.class.getClassLoader());    // $NON-NLS-1$
+    private static final ThreadLocal<Scope> SCOPES = new ThreadLocal<>();
+
+    private final int threshold;
+    private final int maxFingerprints;
+
+    /**
+     * Constructs a detector
+     *
+     * @param threshold the number of executions of the same fingerprint within a scope to warn
+     * @param maxFingerprints the maximum number of distinct fingerprints to count within a scope
+     */
+    public RepeatedStatementDetector(int threshold, int maxFingerprints) {
+        Assert.isTrue(threshold > 1, "Threshold must be greater than one");
+        Assert.isTrue(maxFingerprints > 0, "Max fingerprints must be positive");
+        this.threshold = threshold;
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    /**
+     * Starts receiving the events of all the connections
+     */
+    public void start() {
+        DelegatingJdbcEventListener.register(this);
+    }
+
+    @Override
+    public void close() {
+        DelegatingJdbcEventListener.unregister(this);
+    }
+
+    /**
+     * Opens a manual scope of the current thread, which should be closed in a finally block
+     * <p>
+     * Scopes can be nested, only the outermost one counts and reports
+     *
+     * @return a handle that closes the scope
+     */
+    public static AutoCloseable openScope() {
+        Scope scope = getScope();
+        scope.depth++;
+        return scope::closeManual;
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        Scope scope = SCOPES.get();
+        boolean manual = scope != null && scope.depth > 0;
+        boolean transactional = TRANSACTION_PRESENT && TransactionScopes.isActive();
+        if (!manual && !transactional) {
+            return;
+        }
+        if (scope == null) {
+            scope = getScope();
+        }
+        if (transactional && !scope.transactional) {
+            TransactionScopes.bind(scope);
+        }
+        String fingerprint = SqlFingerprintUtils.fingerprint(statementInformation.getSql());
+        if (fingerprint == null) {
+            return;
+        }
+        int count = scope.increment(fingerprint, maxFingerprints);
+        if (count == threshold) {
+            scope.addReport(new Report(fingerprint, new Throwable("Call site of the repeated statement")));    // $NON-NLS-1$
+        }
+    }
+
+    private static Scope getScope() {
+        Scope scope = SCOPES.get();
+        if (scope == null) {
+            scope = new Scope();
+            SCOPES.set(scope);
+        }
+        return scope;
+    }
+
+
+    private static final class Scope {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private String[] keys = new String[INITIAL_CAPACITY];
+        private int[] hashes = new int[INITIAL_CAPACITY];
+        private int[] counts = new int[INITIAL_CAPACITY];
+        private int size;
+        private int depth;
+        private boolean transactional;
+        private List<Report> reports;
+
+        private int increment(String fingerprint, int maxSize) {
+            int hash = fingerprint.hashCode();
+            int mask = keys.length - 1;
+            for (int index = mix(hash) & mask; ; index = (index + 1) & mask) {
+                String key = keys[index];
+                if (key == null) {
+                    if (size >= maxSize) {
+                        return 0;
+                    }
+                    keys[index] = fingerprint;
+                    hashes[index] = hash;
+                    counts[index] = 1;
+                    if (++size * 2 > keys.length) {
+                        resize(keys.length << 1);
+                    }
+                    return 1;
+                }
+                if (hashes[index] == hash && (key == fingerprint || key.equals(fingerprint))) {
+                    return ++counts[index];
+                }
+            }
+        }
+
+        private void resize(int capacity) {
+            String[] oldKeys = keys;
+            int[] oldHashes = hashes, oldCounts = counts;
+            keys = new String[capacity];
+            hashes = new int[capacity];
+            counts = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int index = mix(oldHashes[i]) & mask;
+                    while (keys[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+                    keys[index] = oldKeys[i];
+                    hashes[index] = oldHashes[i];
+                    counts[index] = oldCounts[i];
+                }
+            }
+        }
+
+        private int countOf(String fingerprint) {
+            int hash = fingerprint.hashCode();
+            int mask = keys.length - 1;
+            for (int index = mix(hash) & mask; keys[index] != null; index = (index + 1) & mask) {
+                if (hashes[index] == hash && keys[index].equals(fingerprint)) {
+                    return counts[index];
+                }
+            }
+            return 0;
+        }
+
+        private void addReport(Report report) {
+            if (reports == null) {
+                reports = new ArrayList<>();
+            }
+            reports.add(report);
+        }
+
+        private void closeManual() {
+            if (depth > 0 && --depth == 0 && !transactional) {
+                finish("request");    // $NON-NLS-1$
+            }
+        }
+
+        private void finish(String scopeName) {
+            if (reports != null) {
+                for (Report report : reports) {
+                    if (logger.isWarnEnabled()) {
+                        logger.warn(String.format("Statement executed %d times in one %s: %s", countOf(report.fingerprint), scopeName, report.fingerprint), report.callSite);    // $NON-NLS-1$
+                    }
+                }
+                reports = null;
+            }
+            if (size > 0) {
+                if (keys.length > INITIAL_CAPACITY) {
+                    keys = new String[INITIAL_CAPACITY];
+                    hashes = new int[INITIAL_CAPACITY];
+                    counts = new int[INITIAL_CAPACITY];
+                } else {
+                    Arrays.fill(keys, null);
+                }
+                size = 0;
+            }
+        }
+
+        private static int mix(int key) {
+            int hash = key * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+
+    private record Report(String fingerprint, Throwable callSite) {
+    }
+
+
+    /**
+     * Isolates the references to spring-tx, which is optional
+     */
+    private static final class TransactionScopes {
+        private static boolean isActive() {
+            return TransactionSynchronizationManager.isSynchronizationActive();
+        }
+
+        private static void bind(Scope scope) {
+            scope.transactional = true;
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    scope.transactional = false;
+                    scope.finish("transaction");    // $NON-NLS-1$
+                }
+            });
+        }
+    }
+}
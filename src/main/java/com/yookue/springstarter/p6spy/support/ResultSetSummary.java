@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import com.p6spy.engine.common.ConnectionInformation;
+import com.p6spy.engine.common.Loggable;
+import com.p6spy.engine.common.ResultSetInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.logging.Category;
+import lombok.Getter;
+
+
+/**
+ * In-flight counters of a result set, which are logged as one line when the result set is closed
+ * <p>
+ * The counters are primitives, so fetching a row and reading a value allocate nothing. The bytes are the approximate heap
+ * footprint of the values read by the application, the columns that are never read are not counted. A statement is used by one
+ * thread at a time, so the counters are not synchronized
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.listener.GatedLoggingEventListener
+ */
+@Getter
+@SuppressWarnings("unused")
+public final class ResultSetSummary implements Loggable {
+    /**
+     * The category of the lines of the result sets
+     */
+    public static final Category FETCH = new Category("fetch");    // $NON-NLS-1$
+
+    private static final String SUMMARY_PREFIX = "/* fetched ";    // $NON-NLS-1$
+    private static final String SUMMARY_ROWS = " rows, ";    // $NON-NLS-1$
+    private static final String SUMMARY_BYTES = " bytes";    // $NON-NLS-1$
+    private static final String SUMMARY_FIRST_ROW = ", first row ";    // $NON-NLS-1$
+    private static final String SUMMARY_MILLIS = " ms";    // $NON-NLS-1$
+    private static final String SUMMARY_LARGE = ", large */ ";    // $NON-NLS-1$
+    private static final String SUMMARY_SUFFIX = " */ ";    // $NON-NLS-1$
+
+    /**
+     * The statement that the result set belongs to
+     */
+    private final StatementInformation statementInformation;
+
+    /**
+     * The elapsed time of executing the statement in nanoseconds
+     */
+    private final long executeNanos;
+
+    /**
+     * The number of the fetched rows that flags the result set as large, zero to not flag by rows
+     */
+    private final long largeRows;
+
+    /**
+     * The approximate bytes that flags the result set as large, zero to not flag by bytes
+     */
+    private final long largeBytes;
+
+    /**
+     * The result set that the counters belong to, or {@code null} before the first row is fetched
+     */
+    private ResultSetInformation resultSetInformation;
+
+    /**
+     * The number of the fetched rows
+     */
+    private long rowCount;
+
+    /**
+     * The approximate heap footprint of the values read
+     */
+    private long byteCount;
+
+    /**
+     * The total elapsed time of the calls of {@code next} in nanoseconds
+     */
+    private long fetchNanos;
+
+    /**
+     * The elapsed time of executing the statement and fetching the first row in nanoseconds, or {@code -1} if there is no row
+     */
+    private long firstRowNanos = -1L;
+
+    /**
+     * Whether the statement has been executed again before the result set is closed, so the bound values are not of the result set
+     */
+    private boolean replaced;
+
+    /**
+     * Constructs a summary
+     *
+     * @param statementInformation the statement that the result set belongs to
+     * @param executeNanos the elapsed time of executing the statement in nanoseconds
+     * @param largeRows the number of the fetched rows that flags the result set as large, zero to not flag by rows
+     * @param largeBytes the approximate bytes that flags the result set as large, zero to not flag by bytes
+     */
+    public ResultSetSummary(StatementInformation statementInformation, long executeNanos, long largeRows, long largeBytes) {
+        this.statementInformation = statementInformation;
+        this.executeNanos = executeNanos;
+        this.largeRows = largeRows;
+        this.largeBytes = largeBytes;
+    }
+
+    /**
+     * Returns whether the counters belong to the result set, binding them to it if no row has been fetched yet
+     *
+     * @param resultSetInformation the result set to check
+     *
+     * @return whether the counters belong to the result set
+     */
+    public boolean bind(ResultSetInformation resultSetInformation) {
+        if (this.resultSetInformation == null) {
+            this.resultSetInformation = resultSetInformation;
+            return true;
+        }
+        return this.resultSetInformation == resultSetInformation;
+    }
+
+    /**
+     * Adds a call of {@code next}
+     *
+     * @param timeElapsedNanos the elapsed time of the call in nanoseconds
+     * @param hasNext whether the call has fetched a row
+     */
+    public void addNext(long timeElapsedNanos, boolean hasNext) {
+        fetchNanos += timeElapsedNanos;
+        if (hasNext) {
+            if (rowCount == 0L) {
+                firstRowNanos = executeNanos + fetchNanos;
+            }
+            rowCount++;
+        }
+    }
+
+    /**
+     * Adds a value read from the current row
+     *
+     * @param value the value read
+     */
+    public void addValue(Object value) {
+        byteCount += estimateBytes(value);
+    }
+
+    /**
+     * Marks that the statement has been executed again before the result set is closed
+     */
+    public void markReplaced() {
+        replaced = true;
+    }
+
+    /**
+     * Returns whether the result set is over the row or the byte threshold
+     *
+     * @return whether the result set is over the row or the byte threshold
+     */
+    public boolean isLarge() {
+        return (largeRows > 0L && rowCount >= largeRows) || (largeBytes > 0L && byteCount >= largeBytes);
+    }
+
+    @Override
+    public String getSql() {
+        return statementInformation.getSql();
+    }
+
+    /**
+     * Returns the summary of the result set, which is the counters, followed by the statement with the bound values, or the statement as it was prepared if it has been executed again
+     *
+     * @return the summary of the result set
+     */
+    @Override
+    public String getSqlWithValues() {
+        StringBuilder builder = new StringBuilder(SUMMARY_PREFIX).append(rowCount).append(SUMMARY_ROWS).append(byteCount).append(SUMMARY_BYTES);
+        if (firstRowNanos >= 0L) {
+            builder.append(SUMMARY_FIRST_ROW).append(TimeUnit.NANOSECONDS.toMillis(firstRowNanos)).append(SUMMARY_MILLIS);
+        }
+        return builder.append(isLarge() ? SUMMARY_LARGE : SUMMARY_SUFFIX).append(replaced ? statementInformation.getSql() : statementInformation.getSqlWithValues()).toString();
+    }
+
+    @Override
+    public ConnectionInformation getConnectionInformation() {
+        return statementInformation.getConnectionInformation();
+    }
+
+    private static long estimateBytes(Object value) {
+        if (value == null || value instanceof Boolean) {
+            return 0L;
+        }
+        if (value instanceof String string) {
+            return 40L + string.length();
+        }
+        if (value instanceof byte[] bytes) {
+            return 16L + bytes.length;
+        }
+        if (value instanceof char[] chars) {
+            return 16L + 2L * chars.length;
+        }
+        if (value instanceof CharSequence sequence) {
+            return 40L + 2L * sequence.length();
+        }
+        if (value instanceof BigDecimal || value instanceof BigInteger) {
+            return 64L;
+        }
+        return (value instanceof Number) ? 16L : 24L;
+    }
+}
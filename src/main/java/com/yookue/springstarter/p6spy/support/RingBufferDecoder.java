@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.StringUtils;
+import com.yookue.springstarter.p6spy.appender.RingBufferLogger;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+
+/**
+ * Decoder of the dumps of {@link com.yookue.springstarter.p6spy.appender.RingBufferLogger}
+ * <p>
+ * Runs from the command line as well, prints the records of the given dumps one per line, in the columns of the p6spy log file
+ * <pre><code>
+ * java -cp p6spy-spring-boot-starter.jar com.yookue.springstarter.p6spy.support.RingBufferDecoder p6spy-ring-20220101-000000-000-slow.bin
+ * </code></pre>
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.appender.RingBufferLogger
+ */
+@SuppressWarnings("unused")
+public abstract class RingBufferDecoder {
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());    // $NON-NLS-1$
+    private static final String SEPARATOR = "|";    // $NON-NLS-1$
+
+    /**
+     * Reads the records of the dump
+     *
+     * @param path the file of the dump
+     * @param consumer the consumer of the records
+     *
+     * @throws IOException if the file cannot be read, or is not a dump
+     */
+    public static void decode(Path path, Consumer<Record> consumer) throws IOException {
+        try (InputStream stream = Files.newInputStream(path)) {
+            decode(stream, consumer);
+        }
+    }
+
+    /**
+     * Reads the records of the dump
+     *
+     * @param stream the stream of the dump
+     * @param consumer the consumer of the records
+     *
+     * @throws IOException if the stream cannot be read, or is not a dump
+     */
+    public static void decode(InputStream stream, Consumer<Record> consumer) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+        if (input.readInt() != RingBufferLogger.MAGIC) {
+            throw new IOException("Not a dump of p6spy ring appender");    // $NON-NLS-1$
+        }
+        byte version = input.readByte();
+        if (version != RingBufferLogger.VERSION) {
+            throw new IOException("Unsupported version of p6spy ring dump: " + version);    // $NON-NLS-1$
+        }
+        while (true) {
+            try {
+                input.readInt();
+            } catch (EOFException ignored) {
+                return;
+            }
+            byte type = input.readByte();
+            long timestamp = input.readLong();
+            int connectionId = input.readInt();
+            long elapsed = input.readLong();
+            consumer.accept(new Record(type, timestamp, connectionId, elapsed, readString(input), readString(input), readString(input), readString(input)));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: RingBufferDecoder <dump file>...");    // $NON-NLS-1$
+            System.exit(2);
+        }
+        PrintStream out = System.out;
+        for (String arg : args) {
+            decode(Paths.get(arg), entry -> out.println(entry.format()));
+        }
+        out.flush();
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length == 0) {
+            return StringUtils.EMPTY;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Record of a dump
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Record {
+        /**
+         * The type, {@code RingBufferLogger.TYPE_SQL}, {@code TYPE_TEXT} or {@code TYPE_EXCEPTION}
+         */
+        private final byte type;
+
+        /**
+         * The epoch milliseconds of the event
+         */
+        private final long timestamp;
+
+        private final int connectionId;
+        private final long elapsed;
+        private final String category;
+        private final String prepared;
+
+        /**
+         * The sql with the bound values, the text, or the stack trace
+         */
+        private final String text;
+
+        private final String url;
+
+        /**
+         * Returns the record in the columns of the p6spy log file
+         *
+         * @return the record in the columns of the p6spy log file
+         */
+        public String format() {
+            String time = TIME_FORMATTER.format(Instant.ofEpochMilli(timestamp));
+            if (type == RingBufferLogger.TYPE_TEXT) {
+                return time + SEPARATOR + text;
+            }
+            String line = time + SEPARATOR + elapsed + SEPARATOR + category + SEPARATOR + "connection " + connectionId + SEPARATOR + url + SEPARATOR + prepared;    // $NON-NLS-1$
+            return (type == RingBufferLogger.TYPE_EXCEPTION) ? line + System.lineSeparator() + text : line + SEPARATOR + text;
+        }
+    }
+}
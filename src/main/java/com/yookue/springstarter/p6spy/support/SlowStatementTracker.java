@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.util.Assert;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import com.p6spy.engine.logging.Category;
+import com.yookue.springstarter.p6spy.listener.DelegatingJdbcEventListener;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+
+/**
+ * Listener that keeps the slowest statements over a sliding window in bounded memory
+ * <p>
+ * The window is divided into slots, and each slot into stripes that are picked by the thread, so writers seldom meet.
+ * Every stripe keeps a min heap of at most {@code capacity} entries, and publishes the fastest of them as a volatile
+ * admission threshold when full. Statements not slower than the threshold return after a single comparison, the stack is
+ * walked only for the admitted ones. Readers merge the stripes of the live slots, so reading costs the writers nothing
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class SlowStatementTracker extends SimpleJdbcEventListener implements AutoCloseable {
+    private static final Comparator<Entry> ELAPSED_ORDER = Comparator.comparingLong(Entry::getElapsedNanos);
+
+    private final Slot[] slots;
+    private final int stripeMask;
+    private final int capacity;
+    private final long slotMillis;
+
+    /**
+     * Constructs a tracker
+     *
+     * @param capacity the maximum number of statements to keep
+     * @param windowMillis the length of the sliding window in milliseconds
+     * @param slotCount the number of slots that the window is divided into
+     */
+    public SlowStatementTracker(int capacity, long windowMillis, int slotCount) {
+        Assert.isTrue(capacity > 0, "Capacity must be positive");
+        Assert.isTrue(slotCount > 0 && windowMillis >= slotCount, "Window must be positive and not shorter than the slot count in milliseconds");
+        this.capacity = capacity;
+        this.slotMillis = windowMillis / slotCount;
+        int stripes = Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors(), 1) * 2 - 1) << 1;
+        this.stripeMask = stripes - 1;
+        this.slots = new Slot[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new Slot(stripes);
+        }
+    }
+
+    /**
+     * Starts receiving the events of all the connections
+     */
+    public void start() {
+        DelegatingJdbcEventListener.register(this);
+    }
+
+    @Override
+    public void close() {
+        DelegatingJdbcEventListener.unregister(this);
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        record(statementInformation, timeElapsedNanos, Category.STATEMENT);
+    }
+
+    @Override
+    public void onAfterExecuteBatch(StatementInformation statementInformation, long timeElapsedNanos, int[] updateCounts, SQLException e) {
+        record(statementInformation, timeElapsedNanos, Category.BATCH);
+    }
+
+    /**
+     * Returns the slowest statements over the window, the slowest first
+     *
+     * @return the slowest statements over the window, the slowest first
+     */
+    public List<Entry> getEntries() {
+        long epoch = System.currentTimeMillis() / slotMillis;
+        PriorityQueue<Entry> merged = new PriorityQueue<>(capacity + 1, ELAPSED_ORDER);
+        for (Slot slot : slots) {
+            for (Stripe stripe : slot.stripes) {
+                stripe.lock.lock();
+                try {
+                    if (epoch - stripe.epoch >= slots.length) {
+                        continue;
+                    }
+                    for (Entry entry : stripe.heap) {
+                        merged.offer(entry);
+                        if (merged.size() > capacity) {
+                            merged.poll();
+                        }
+                    }
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+        }
+        List<Entry> result = new ArrayList<>(merged);
+        result.sort(ELAPSED_ORDER.reversed());
+        return result;
+    }
+
+    public long getWindowMillis() {
+        return slotMillis * slots.length;
+    }
+
+    private void record(StatementInformation statementInformation, long timeElapsedNanos, Category category) {
+        long now = System.currentTimeMillis(), epoch = now / slotMillis;
+        Slot slot = slots[(int) (epoch % slots.length)];
+        Stripe stripe = slot.stripes[(int) Thread.currentThread().getId() & stripeMask];
+        if (stripe.epoch == epoch && timeElapsedNanos <= stripe.threshold) {
+            return;
+        }
+        String caller = StackFrameUtils.getCallerFrame();
+        Entry entry = new Entry(timeElapsedNanos, category.getName(), statementInformation.getConnectionInformation().getConnectionId(), statementInformation.getSql(), caller, now);
+        stripe.lock.lock();
+        try {
+            if (stripe.epoch != epoch) {
+                if (epoch < stripe.epoch) {
+                    return;
+                }
+                stripe.heap.clear();
+                stripe.threshold = Long.MIN_VALUE;
+                stripe.epoch = epoch;
+            }
+            stripe.heap.offer(entry);
+            if (stripe.heap.size() > capacity) {
+                stripe.heap.poll();
+            }
+            if (stripe.heap.size() >= capacity) {
+                stripe.threshold = stripe.heap.peek().elapsedNanos;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * A statement kept by the tracker
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Entry {
+        private final long elapsedNanos;
+        private final String category;
+        private final int connectionId;
+        private final String sql;
+        private final String caller;
+        private final long timestamp;
+
+        public double getElapsedMillis() {
+            return elapsedNanos / (double) TimeUnit.MILLISECONDS.toNanos(1L);
+        }
+    }
+
+    private static final class Slot {
+        private final Stripe[] stripes;
+
+        private Slot(int stripeCount) {
+            stripes = new Stripe[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final PriorityQueue<Entry> heap = new PriorityQueue<>(ELAPSED_ORDER);
+        private volatile long epoch = -1L;
+        private volatile long threshold = Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import com.p6spy.engine.spy.P6ModuleManager;
+import com.p6spy.engine.spy.P6SpyLoadableOptions;
+import com.p6spy.engine.spy.P6SpyOptions;
+import com.p6spy.engine.spy.option.EnvironmentVariables;
+import com.p6spy.engine.spy.option.P6OptionsSource;
+import com.p6spy.engine.spy.option.SpyDotProperties;
+import com.p6spy.engine.spy.option.SystemProperties;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+
+
+/**
+ * Utilities for applying the starter properties to the options of p6spy
+ * <p>
+ * The properties are mapped to the option keys of {@link com.p6spy.engine.spy.P6SpyOptions} by hand, so neither reflection nor
+ * annotation lookups are involved at startup, and nothing has to be registered for reflection in a native image.
+ * The module manager of p6spy is only reloaded when an option that is read during its initialization has changed
+ *
+ * @author David Hsing
+ * @see com.p6spy.engine.spy.P6SpyOptions
+ * @see com.p6spy.engine.spy.P6ModuleManager
+ */
+@SuppressWarnings("unused")
+public abstract class SpyOptionsUtils {
+    /**
+     * Returns the options of p6spy that are mapped from the properties, without the blank ones
+     *
+     * @param properties the properties of the starter
+     *
+     * @return the options of p6spy that are mapped from the properties, without the blank ones
+     */
+    public static Map<String, String> toOptions(P6spyProperties properties) {
+        Map<String, String> options = new LinkedHashMap<>(32);
+        putOption(options, P6SpyOptions.AUTOFLUSH, properties.getAutoFlush());
+        putOption(options, P6SpyOptions.DRIVERLIST, properties.getDriverList());
+        putOption(options, P6SpyOptions.LOGFILE, StringUtils.isBlank(properties.getLogFile()) ? null : org.springframework.util.StringUtils.cleanPath(properties.getLogFile()));
+        putOption(options, P6SpyOptions.LOG_MESSAGE_FORMAT, properties.getLogMessageFormat());
+        putOption(options, P6SpyOptions.APPEND, properties.getAppend());
+        putOption(options, P6SpyOptions.DATEFORMAT, properties.getDateFormat());
+        putOption(options, P6SpyOptions.APPENDER, properties.getAppender());
+        putOption(options, P6SpyOptions.MODULELIST, properties.getModuleList());
+        putOption(options, P6SpyOptions.STACKTRACE, properties.getStackTrace());
+        putOption(options, P6SpyOptions.STACKTRACECLASS, properties.getStackTraceClass());
+        putOption(options, P6SpyOptions.RELOADPROPERTIES, properties.getReloadProperties());
+        putOption(options, P6SpyOptions.RELOADPROPERTIESINTERVAL, properties.getReloadPropertiesInterval());
+        putOption(options, P6SpyOptions.JNDICONTEXTFACTORY, properties.getJndiContextFactory());
+        putOption(options, P6SpyOptions.JNDICONTEXTPROVIDERURL, properties.getJndiContextProviderUrl());
+        putOption(options, P6SpyOptions.JNDICONTEXTCUSTOM, properties.getJndiContextCustom());
+        putOption(options, P6SpyOptions.REALDATASOURCE, properties.getRealDatasource());
+        putOption(options, P6SpyOptions.REALDATASOURCECLASS, properties.getRealDatasourceClass());
+        putOption(options, P6SpyOptions.REALDATASOURCEPROPERTIES, properties.getRealDatasourceProperties());
+        putOption(options, P6SpyOptions.CUSTOM_LOG_MESSAGE_FORMAT, properties.getCustomLogMessageFormat());
+        putOption(options, P6SpyOptions.DATABASE_DIALECT_DATE_FORMAT, properties.getDatabaseDialectDateFormat());
+        putOption(options, P6SpyOptions.DATABASE_DIALECT_TIMESTAMP_FORMAT, properties.getDatabaseDialectTimestampFormat());
+        putOption(options, P6SpyOptions.DATABASE_DIALECT_BOOLEAN_FORMAT, properties.getDatabaseDialectBooleanFormat());
+        putOption(options, P6SpyOptions.JMX, properties.getJmx());
+        putOption(options, P6SpyOptions.JMX_PREFIX, properties.getJmxPrefix());
+        return options;
+    }
+
+    /**
+     * Applies the properties to the options of p6spy
+     * <p>
+     * The options are kept as the defaults of p6spy, so that they survive the reloads triggered by p6spy itself.
+     * The options set through {@code spy.properties}, the environment variables or the system properties still take precedence,
+     * as same as a reload of p6spy does
+     *
+     * @param properties the properties of the starter
+     *
+     * @return whether the module manager of p6spy has been reloaded
+     */
+    public static boolean applyOptions(P6spyProperties properties) {
+        Map<String, String> options = toOptions(properties);
+        P6SpyLoadableOptions activeOptions = P6SpyOptions.getActiveInstance();
+        activeOptions.getDefaults().putAll(options);
+        if (requiresReload(activeOptions, options)) {
+            P6ModuleManager.getInstance().reload();
+            return true;
+        }
+        removeExternalOptions(options);
+        if (!options.isEmpty()) {
+            activeOptions.load(options);
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether any of the options that p6spy only reads when initializing the module manager differs from the active ones
+     */
+    private static boolean requiresReload(P6SpyLoadableOptions activeOptions, Map<String, String> options) {
+        String moduleList = options.get(P6SpyOptions.MODULELIST);
+        if (moduleList != null && !Objects.equals(splitNames(moduleList), activeOptions.getModuleNames())) {
+            return true;
+        }
+        String driverList = options.get(P6SpyOptions.DRIVERLIST);
+        if (driverList != null && !Objects.equals(splitNames(driverList), activeOptions.getDriverNames())) {
+            return true;
+        }
+        String jmx = options.get(P6SpyOptions.JMX);
+        if (jmx != null && BooleanUtils.toBoolean(jmx) != activeOptions.getJmx()) {
+            return true;
+        }
+        String jmxPrefix = options.get(P6SpyOptions.JMX_PREFIX);
+        return jmxPrefix != null && !StringUtils.equals(jmxPrefix, activeOptions.getJmxPrefix());
+    }
+
+    /**
+     * Removes the options that have been set through the sources of p6spy, which take precedence over the properties
+     */
+    private static void removeExternalOptions(Map<String, String> options) {
+        P6OptionsSource[] sources;
+        try {
+            sources = new P6OptionsSource[] {new SpyDotProperties(), new EnvironmentVariables(), new SystemProperties()};
+        } catch (IOException ignored) {
+            sources = new P6OptionsSource[] {new EnvironmentVariables(), new SystemProperties()};
+        }
+        for (P6OptionsSource source : sources) {
+            Map<String, String> sourceOptions = source.getOptions();
+            if (sourceOptions != null) {
+                options.keySet().removeAll(sourceOptions.keySet());
+            }
+        }
+    }
+
+    private static Set<String> splitNames(String csv) {
+        return Arrays.stream(StringUtils.split(csv, ',')).map(StringUtils::trim).filter(StringUtils::isNotEmpty).collect(Collectors.toCollection(HashSet::new));
+    }
+
+    private static void putOption(Map<String, String> options, String key, Object value) {
+        String text = null;
+        if (value instanceof Boolean bool) {
+            text = BooleanUtils.toStringTrueFalse(bool);
+        } else if (value instanceof Class<?> clazz) {
+            text = clazz.getName();
+        } else if (value != null) {
+            text = value.toString();
+        }
+        if (StringUtils.isNotBlank(text)) {
+            options.put(key, text);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import org.apache.commons.lang3.StringUtils;
+
+
+/**
+ * Utilities for reducing SQL statements to fingerprints, which group the statements that differ only in literal values
+ * <p>
+ * A fingerprint is computed in a single pass: comments are stripped, string and numeric literals become {@code ?}, together
+ * with the sign of a number that follows an operator, an opening parenthesis or a comma,
+ * {@code IN} lists of literals or placeholders collapse to {@code (?+)}, whitespace collapses to one space, and unquoted
+ * words are lower cased. Quoted identifiers are kept verbatim
+ * <p>
+ * The fingerprints are kept in a bounded cache keyed by the raw statement, so that formatters, metrics and detectors can
+ * call {@link #fingerprint(String)} for every statement without normalizing it again. Prefer passing the prepared statement
+ * rather than the one with bound values, which would hardly ever hit the cache
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public abstract class SqlFingerprintUtils {
+    private static final BoundedCache<String, String> CACHE = new BoundedCache<>(2048);
+    private static final String IN_LIST = "(?+)";    // $NON-NLS-1$
+
+    /**
+     * Returns the fingerprint of the statement, normalizes it only if not cached
+     *
+     * @param sql the statement to inspect
+     *
+     * @return the fingerprint of the statement, or {@code null} if the statement is {@code null}
+     */
+    public static String fingerprint(String sql) {
+        return (sql == null) ? null : CACHE.get(sql, SqlFingerprintUtils::normalize);
+    }
+
+    /**
+     * Returns the cache of fingerprints, keyed by the raw statements
+     *
+     * @return the cache of fingerprints, keyed by the raw statements
+     */
+    public static BoundedCache<String, String> getCache() {
+        return CACHE;
+    }
+
+    /**
+     * Returns the fingerprint of the statement, without looking up the cache
+     *
+     * @param sql the statement to normalize
+     *
+     * @return the fingerprint of the statement, or {@code null} if the statement is {@code null}
+     */
+    public static String normalize(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        int length = sql.length();
+        StringBuilder builder = new StringBuilder(length);
+        boolean pendingSpace = false, afterIn = false, listValid = false, listFilled = false;
+        int listStart = -1;
+        for (int i = 0; i < length; ) {
+            char ch = sql.charAt(i);
+            char next = (i + 1 < length) ? sql.charAt(i + 1) : '\0';
+            if (Character.isWhitespace(ch)) {
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+            if (ch == '-' && next == '-') {
+                int end = sql.indexOf('\n', i + 2);
+                i = (end < 0) ? length : end + 1;
+                pendingSpace = true;
+                continue;
+            }
+            if (ch == '/' && next == '*') {
+                int end = sql.indexOf("*/", i + 2);    // $NON-NLS-1$
+                i = (end < 0) ? length : end + 2;
+                pendingSpace = true;
+                continue;
+            }
+            boolean signedNumber = isSignedNumber(sql, i) && isSignAllowed(builder);
+            boolean operator = !signedNumber && isOperator(ch) && !(ch == ':' && isWordPart(next));
+            if ((pendingSpace || operator) && isSpaceAllowed(builder, ch, next)) {
+                builder.append(' ');
+            }
+            pendingSpace = false;
+            boolean wasAfterIn = afterIn;
+            afterIn = false;
+            if (ch == '\'') {
+                i = skipString(sql, i);
+                builder.append('?');
+                listFilled = true;
+            } else if (ch == '"' || ch == '`') {
+                int end = sql.indexOf(ch, i + 1);
+                end = (end < 0) ? length : end + 1;
+                builder.append(sql, i, end);
+                i = end;
+                listValid = false;
+            } else if (signedNumber) {
+                i = skipNumber(sql, i + 1);
+                builder.append('?');
+                listFilled = true;
+            } else if (isNumberStart(ch, next) && !isPrecededByWord(builder)) {
+                i = skipNumber(sql, i);
+                builder.append('?');
+                listFilled = true;
+            } else if (operator) {
+                int start = i;
+                while (i < length && isOperator(sql.charAt(i)) && !isCommentStart(sql, i) && !(i > start && isSignedNumber(sql, i))) {
+                    builder.append(sql.charAt(i++));
+                }
+                pendingSpace = true;
+                listValid = false;
+            } else if (isWordPart(ch) || (ch == ':' && isWordPart(next))) {
+                int start = i;
+                builder.append(Character.toLowerCase(ch));
+                i++;
+                while (i < length && isWordPart(sql.charAt(i))) {
+                    builder.append(Character.toLowerCase(sql.charAt(i++)));
+                }
+                afterIn = (i - start == 2) && StringUtils.equalsIgnoreCase(sql.substring(start, i), "in");    // $NON-NLS-1$
+                listValid = false;
+            } else {
+                if (ch == '(') {
+                    listValid = wasAfterIn;
+                    listFilled = false;
+                    listStart = builder.length();
+                } else if (ch == ')' && listValid && listFilled) {
+                    builder.setLength(listStart);
+                    builder.append(IN_LIST);
+                    listValid = false;
+                    i++;
+                    continue;
+                } else if (ch == '?') {
+                    listFilled = true;
+                } else if (ch != ',') {
+                    listValid = false;
+                }
+                builder.append(ch);
+                pendingSpace = (ch == ',');
+                i++;
+            }
+        }
+        return builder.toString();
+    }
+
+    private static int skipString(String sql, int start) {
+        int length = sql.length();
+        for (int i = start + 1; i < length; i++) {
+            char ch = sql.charAt(i);
+            if (ch == '\\') {
+                i++;
+            } else if (ch == '\'') {
+                if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                    i++;
+                } else {
+                    return i + 1;
+                }
+            }
+        }
+        return length;
+    }
+
+    private static int skipNumber(String sql, int start) {
+        int length = sql.length(), i = start;
+        while (i < length) {
+            char ch = sql.charAt(i);
+            if (Character.isLetterOrDigit(ch) || ch == '.') {
+                i++;
+            } else if ((ch == '+' || ch == '-') && (sql.charAt(i - 1) == 'e' || sql.charAt(i - 1) == 'E') && Character.isDigit(sql.charAt(start))) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static boolean isSpaceAllowed(StringBuilder builder, char ch, char next) {
+        if (builder.isEmpty() || ch == ')' || ch == ',' || (ch == '.' && !isNumberStart(ch, next))) {
+            return false;
+        }
+        char last = builder.charAt(builder.length() - 1);
+        return last != '(' && last != '.';
+    }
+
+    private static boolean isCommentStart(String sql, int index) {
+        if (index + 1 >= sql.length()) {
+            return false;
+        }
+        char ch = sql.charAt(index), next = sql.charAt(index + 1);
+        return (ch == '-' && next == '-') || (ch == '/' && next == '*');
+    }
+
+    private static boolean isOperator(char ch) {
+        return "=<>!+-*/%^&|~:".indexOf(ch) >= 0;    // $NON-NLS-1$
+    }
+
+    /**
+     * Returns whether a sign that starts a number is at the index, which is folded into the literal when it is unary
+     */
+    private static boolean isSignedNumber(String sql, int index) {
+        char ch = sql.charAt(index);
+        if ((ch != '-' && ch != '+') || index + 1 >= sql.length()) {
+            return false;
+        }
+        char next = sql.charAt(index + 1), following = (index + 2 < sql.length()) ? sql.charAt(index + 2) : '\0';
+        return isNumberStart(next, following);
+    }
+
+    /**
+     * A sign is unary at the start, or after an operator, an opening parenthesis or a comma
+     */
+    private static boolean isSignAllowed(StringBuilder builder) {
+        if (builder.isEmpty()) {
+            return true;
+        }
+        char last = builder.charAt(builder.length() - 1);
+        return last == '(' || last == ',' || isOperator(last);
+    }
+
+    private static boolean isNumberStart(char ch, char next) {
+        return (ch >= '0' && ch <= '9') || (ch == '.' && next >= '0' && next <= '9');
+    }
+
+    private static boolean isPrecededByWord(StringBuilder builder) {
+        return !builder.isEmpty() && isWordPart(builder.charAt(builder.length() - 1));
+    }
+
+    private static boolean isWordPart(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$' || ch == '#' || ch == '@';
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import org.apache.commons.lang3.StringUtils;
+
+
+/**
+ * Utilities for locating the application frame that issued a statement
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public abstract class StackFrameUtils {
+    private static final StackWalker WALKER = StackWalker.getInstance();
+    private static final String[] FRAMEWORK_PREFIXES = {
+        "java.", "javax.", "jakarta.", "jdk.", "sun.", "com.sun.",    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$ // $NON-NLS-4$ // $NON-NLS-5$ // $NON-NLS-6$
+        "com.p6spy.", "com.yookue.springstarter.p6spy.", "org.springframework.", "org.hibernate.", "org.apache.ibatis.",    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$ // $NON-NLS-4$ // $NON-NLS-5$
+        "org.mybatis.", "com.baomidou.", "org.jooq.", "com.zaxxer.", "com.alibaba.druid.", "org.apache.commons.dbcp2.",    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$ // $NON-NLS-4$ // $NON-NLS-5$ // $NON-NLS-6$
+        "com.mysql.", "org.mariadb.", "org.postgresql.", "oracle.", "org.h2.", "org.hsqldb.", "org.apache.derby."    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$ // $NON-NLS-4$ // $NON-NLS-5$ // $NON-NLS-6$ // $NON-NLS-7$
+    };
+
+    /**
+     * Returns the first frame of the current thread that belongs to neither the JDK, the JDBC drivers, the pools, the ORM
+     * frameworks nor P6Spy, formatted as {@code class.method(file:line)}
+     * <p>
+     * Walking the stack is expensive, call it only for the statements that will be kept
+     *
+     * @return the first application frame of the current thread, or {@code null} if not found
+     */
+    public static String getCallerFrame() {
+        return WALKER.walk(frames -> frames.filter(frame -> !isFrameworkClass(frame.getClassName())).findFirst())
+            .map(frame -> frame.toStackTraceElement().toString())
+            .orElse(null);
+    }
+
+    private static boolean isFrameworkClass(String className) {
+        return StringUtils.startsWithAny(className, FRAMEWORK_PREFIXES);
+    }
+}
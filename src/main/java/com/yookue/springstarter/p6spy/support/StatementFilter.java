@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.CollectionUtils;
+import com.p6spy.engine.logging.Category;
+import com.yookue.springstarter.p6spy.enumeration.StatementType;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+
+
+/**
+ * Immutable filter of the statements by their categories, types and tables, compiled once from the starter properties
+ * <p>
+ * The categories and the types are checked against bit masks, and the tables are found by a {@link TableNameMatcher} in one pass
+ * over the sql, so the cost of a statement does not grow with the number of the rules
+ * <p>
+ * Every category that is logged, including the {@code fetch} and the {@code lease} categories of the starter, has a bit of its own.
+ * An unknown category name is rejected when the filter is compiled, instead of silently filtering out all the others
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.support.LoggingSettings
+ */
+@SuppressWarnings("unused")
+public final class StatementFilter {
+    private static final StatementFilter ACCEPT_ALL = new StatementFilter(0L, 0, null, false);
+    private static final Map<String, Integer> CATEGORY_BITS = toBits(Category.ERROR, Category.WARN, Category.INFO, Category.DEBUG, Category.BATCH, Category.STATEMENT, Category.RESULTSET,
+        Category.COMMIT, Category.ROLLBACK, Category.RESULT, Category.OUTAGE, ResultSetSummary.FETCH, ConnectionLeaseProfiler.LEASE);
+
+    private final long categoryMask;
+    private final int typeMask;
+    private final TableNameMatcher tableMatcher;
+    private final boolean tablesIncluded;
+
+    private StatementFilter(long categoryMask, int typeMask, TableNameMatcher tableMatcher, boolean tablesIncluded) {
+        this.categoryMask = categoryMask;
+        this.typeMask = typeMask;
+        this.tableMatcher = tableMatcher;
+        this.tablesIncluded = tablesIncluded;
+    }
+
+    /**
+     * Returns a filter that is compiled from the properties
+     *
+     * @param properties the properties of the filter
+     *
+     * @return a filter that is compiled from the properties
+     *
+     * @throws IllegalArgumentException if a category name is unknown
+     */
+    public static StatementFilter of(P6spyProperties.Filter properties) {
+        long categoryMask = 0L;
+        if (!CollectionUtils.isEmpty(properties.getCategories())) {
+            for (String categoryName : properties.getCategories()) {
+                if (StringUtils.isNotBlank(categoryName)) {
+                    Integer bit = CATEGORY_BITS.get(StringUtils.lowerCase(StringUtils.trim(categoryName)));
+                    if (bit == null) {
+                        throw new IllegalArgumentException("Unknown p6spy category '" + categoryName + "', expected one of " + new TreeSet<>(CATEGORY_BITS.keySet()));    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$
+                    }
+                    categoryMask |= 1L << bit;
+                }
+            }
+        }
+        int typeMask = 0;
+        if (!CollectionUtils.isEmpty(properties.getStatementTypes())) {
+            for (StatementType type : properties.getStatementTypes()) {
+                if (type != null) {
+                    typeMask |= 1 << type.ordinal();
+                }
+            }
+        }
+        List<String> includeTables = properties.getIncludeTables(), excludeTables = properties.getExcludeTables();
+        TableNameMatcher tableMatcher = TableNameMatcher.of(includeTables, excludeTables);
+        boolean tablesIncluded = includeTables != null && includeTables.stream().anyMatch(StringUtils::isNotBlank);
+        if (categoryMask == 0L && typeMask == 0 && tableMatcher == null) {
+            return ACCEPT_ALL;
+        }
+        return new StatementFilter(categoryMask, typeMask, tableMatcher, tablesIncluded);
+    }
+
+    /**
+     * Returns a filter that accepts everything
+     *
+     * @return a filter that accepts everything
+     */
+    public static StatementFilter acceptAll() {
+        return ACCEPT_ALL;
+    }
+
+    /**
+     * Returns whether the category is accepted
+     *
+     * @param category the category to check
+     *
+     * @return whether the category is accepted
+     */
+    public boolean isCategoryAccepted(Category category) {
+        if (categoryMask == 0L) {
+            return true;
+        }
+        Integer bit = (category == null) ? null : CATEGORY_BITS.get(category.getName());
+        return bit != null && (categoryMask & (1L << bit)) != 0L;
+    }
+
+    /**
+     * Returns whether the sql is accepted by its type and its tables
+     * <p>
+     * The events without sql, such as commits and rollbacks, are always accepted, as same as the filters of p6spy do
+     *
+     * @param sql the sql to check, preferably without the bound values
+     *
+     * @return whether the sql is accepted by its type and its tables
+     */
+    public boolean isStatementAccepted(String sql) {
+        if (StringUtils.isEmpty(sql)) {
+            return true;
+        }
+        if (typeMask != 0 && (typeMask & (1 << StatementType.of(sql).ordinal())) == 0) {
+            return false;
+        }
+        if (tableMatcher == null) {
+            return true;
+        }
+        int found = tableMatcher.match(sql);
+        return (found & TableNameMatcher.EXCLUDED) == 0 && (!tablesIncluded || (found & TableNameMatcher.INCLUDED) != 0);
+    }
+
+    private static Map<String, Integer> toBits(Category... categories) {
+        Map<String, Integer> bits = new HashMap<>(categories.length * 2);
+        for (int i = 0; i < categories.length; i++) {
+            bits.put(categories[i].getName(), i);
+        }
+        return Map.copyOf(bits);
+    }
+}
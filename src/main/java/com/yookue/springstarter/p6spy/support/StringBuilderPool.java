@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Bounded pool of string builders, striped by the id of the current thread
+ * <p>
+ * Unlike a {@link java.lang.ThreadLocal}, the number of retained builders does not grow with the number of threads, which matters
+ * when every statement runs on its own virtual thread. Borrowing and returning is a single atomic swap of a slot, without any lock;
+ * a thread that finds its slot empty simply allocates a new builder
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public final class StringBuilderPool {
+    private final AtomicReferenceArray<StringBuilder> slots;
+    private final int mask;
+    private final int initialCapacity;
+    private final int maxRetainedCapacity;
+
+    /**
+     * Constructs a pool with two slots per available processor
+     *
+     * @param initialCapacity the initial capacity of the new builders
+     * @param maxRetainedCapacity the maximum capacity of the builders that are returned to the pool
+     */
+    public StringBuilderPool(int initialCapacity, int maxRetainedCapacity) {
+        int size = Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors() * 2 - 1, 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.initialCapacity = initialCapacity;
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    /**
+     * Returns an empty builder, taken from the slot of the current thread if present
+     *
+     * @return an empty builder, taken from the slot of the current thread if present
+     */
+    public StringBuilder acquire() {
+        int index = slotIndex();
+        StringBuilder builder = (slots.get(index) == null) ? null : slots.getAndSet(index, null);
+        if (builder == null) {
+            return new StringBuilder(initialCapacity);
+        }
+        builder.setLength(0);
+        return builder;
+    }
+
+    /**
+     * Returns the builder to the slot of the current thread, unless the slot is occupied or the builder has grown too large
+     *
+     * @param builder the builder that is no longer used by the caller
+     */
+    public void release(StringBuilder builder) {
+        if (builder != null && builder.capacity() <= maxRetainedCapacity) {
+            slots.compareAndSet(slotIndex(), null, builder);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private int slotIndex() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
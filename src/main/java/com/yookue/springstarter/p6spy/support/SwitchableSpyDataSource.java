@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import org.springframework.util.Assert;
+import com.p6spy.engine.spy.JdbcEventListenerFactory;
+import com.p6spy.engine.spy.P6DataSource;
+import lombok.Getter;
+
+
+/**
+ * Data source that hands out connections either spied by a {@link com.p6spy.engine.spy.P6DataSource}, or straight from the target
+ * <p>
+ * The switch is global and read per connection request, so turning spying off costs nothing for the connections obtained
+ * afterwards, while connections already obtained stay as they are until returned to the pool
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.support.DataSourceWrappingPostProcessor
+ */
+@Getter
+@SuppressWarnings("unused")
+public class SwitchableSpyDataSource implements DataSource, AutoCloseable {
+    private static volatile boolean spying = true;
+
+    private final DataSource targetDataSource;
+    private final P6DataSource spyDataSource;
+    private final boolean enabled;
+    private final JdbcEventListenerFactory listenerFactory;
+
+    public SwitchableSpyDataSource(DataSource targetDataSource) {
+        this(targetDataSource, true, null);
+    }
+
+    /**
+     * Constructs a data source
+     *
+     * @param targetDataSource the real data source
+     * @param enabled whether this data source can be spied, regardless of the global switch
+     * @param listenerFactory the listener factory of this data source, or {@code null} to use the global one
+     */
+    public SwitchableSpyDataSource(DataSource targetDataSource, boolean enabled, JdbcEventListenerFactory listenerFactory) {
+        Assert.notNull(targetDataSource, "Target data source must not be null");
+        this.targetDataSource = targetDataSource;
+        this.spyDataSource = new P6DataSource(targetDataSource);
+        this.enabled = enabled;
+        this.listenerFactory = listenerFactory;
+        if (listenerFactory != null) {
+            spyDataSource.setJdbcEventListenerFactory(listenerFactory);
+        }
+    }
+
+    /**
+     * Returns whether the new connections of all the switchable data sources are spied
+     *
+     * @return whether the new connections of all the switchable data sources are spied
+     */
+    public static boolean isSpying() {
+        return spying;
+    }
+
+    /**
+     * Sets whether the new connections of all the switchable data sources are spied
+     *
+     * @param spying whether the new connections of all the switchable data sources are spied
+     */
+    public static void setSpying(boolean spying) {
+        SwitchableSpyDataSource.spying = spying;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return (spying && enabled) ? spyDataSource.getConnection() : targetDataSource.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return (spying && enabled) ? spyDataSource.getConnection(username, password) : targetDataSource.getConnection(username, password);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return targetDataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        targetDataSource.setLogWriter(out);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return targetDataSource.getLoginTimeout();
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        targetDataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return targetDataSource.getParentLogger();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        if (iface.isInstance(targetDataSource)) {
+            return (T) targetDataSource;
+        }
+        return targetDataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || iface.isInstance(targetDataSource) || targetDataSource.isWrapperFor(iface);
+    }
+
+    /**
+     * Closes the target data source and the listener factory, if they are closeable
+     */
+    @Override
+    public void close() throws Exception {
+        try {
+            if (targetDataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        } finally {
+            if (listenerFactory instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.support;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+
+/**
+ * Aho-Corasick automaton that finds the table names of the include and the exclude lists in a sql, in one pass
+ * <p>
+ * The automaton is compiled into a transition table over the characters of the identifiers, so a sql is scanned with one table
+ * lookup per character, however many names are configured. A name is matched case-insensitively as a whole identifier, so
+ * {@code order} does not match {@code orders}, but {@code orders} matches {@code app.orders} and {@code "orders"}. String literals
+ * are skipped
+ *
+ * @author David Hsing
+ * @see com.yookue.springstarter.p6spy.support.StatementFilter
+ */
+@SuppressWarnings("unused")
+public final class TableNameMatcher {
+    /**
+     * Flag of the names in the include list
+     */
+    public static final int INCLUDED = 1;
+
+    /**
+     * Flag of the names in the exclude list
+     */
+    public static final int EXCLUDED = 2;
+
+    private static final int ALPHABET_SIZE = 40;
+    private static final int OTHER_SYMBOL = ALPHABET_SIZE - 1;
+
+    private final int[] transitions;
+    private final int[][] outputs;
+    private final String[] names;
+    private final int[] flags;
+    private final boolean[] ambiguous;
+
+    private TableNameMatcher(int[] transitions, int[][] outputs, String[] names, int[] flags) {
+        this.transitions = transitions;
+        this.outputs = outputs;
+        this.names = names;
+        this.flags = flags;
+        this.ambiguous = new boolean[names.length];
+        for (int index = 0; index < names.length; index++) {
+            ambiguous[index] = names[index].chars().anyMatch(ch -> toSymbol((char) ch) == OTHER_SYMBOL);
+        }
+    }
+
+    /**
+     * Returns a matcher of the table names, or {@code null} if there is no name
+     *
+     * @param includedNames the names in the include list
+     * @param excludedNames the names in the exclude list
+     *
+     * @return a matcher of the table names, or {@code null} if there is no name
+     */
+    public static TableNameMatcher of(Collection<String> includedNames, Collection<String> excludedNames) {
+        Map<String, Integer> nameFlags = new LinkedHashMap<>();
+        putNames(nameFlags, includedNames, INCLUDED);
+        putNames(nameFlags, excludedNames, EXCLUDED);
+        if (nameFlags.isEmpty()) {
+            return null;
+        }
+        String[] names = nameFlags.keySet().toArray(ArrayUtils.EMPTY_STRING_ARRAY);
+        int[] flags = nameFlags.values().stream().mapToInt(Integer::intValue).toArray();
+        // Builds the trie
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> terminals = new ArrayList<>();
+        trie.add(newState());
+        terminals.add(new ArrayList<>(1));
+        for (int index = 0; index < names.length; index++) {
+            int state = 0;
+            for (int i = 0; i < names[index].length(); i++) {
+                int symbol = toSymbol(names[index].charAt(i));
+                if (trie.get(state)[symbol] < 0) {
+                    trie.get(state)[symbol] = trie.size();
+                    trie.add(newState());
+                    terminals.add(new ArrayList<>(1));
+                }
+                state = trie.get(state)[symbol];
+            }
+            terminals.get(state).add(index);
+        }
+        // Turns the trie into a transition table, following the failure links breadth first
+        int stateCount = trie.size();
+        int[] transitions = new int[stateCount * ALPHABET_SIZE];
+        int[] failures = new int[stateCount];
+        int[][] outputs = new int[stateCount][];
+        outputs[0] = ArrayUtils.EMPTY_INT_ARRAY;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            int next = trie.get(0)[symbol];
+            if (next < 0) {
+                transitions[symbol] = 0;
+            } else {
+                transitions[symbol] = next;
+                failures[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] = ArrayUtils.addAll(terminals.get(state).stream().mapToInt(Integer::intValue).toArray(), outputs[failures[state]]);
+            for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                int next = trie.get(state)[symbol];
+                if (next < 0) {
+                    transitions[state * ALPHABET_SIZE + symbol] = transitions[failures[state] * ALPHABET_SIZE + symbol];
+                } else {
+                    transitions[state * ALPHABET_SIZE + symbol] = next;
+                    failures[next] = transitions[failures[state] * ALPHABET_SIZE + symbol];
+                    queue.add(next);
+                }
+            }
+        }
+        return new TableNameMatcher(transitions, outputs, names, flags);
+    }
+
+    /**
+     * Returns the flags of the names found in the sql, stops as soon as an excluded name is found
+     *
+     * @param sql the sql to scan
+     *
+     * @return the flags of the names found in the sql, a combination of {@link #INCLUDED} and {@link #EXCLUDED}
+     */
+    public int match(String sql) {
+        if (StringUtils.isEmpty(sql)) {
+            return 0;
+        }
+        int result = 0, state = 0, length = sql.length();
+        for (int i = 0; i < length; i++) {
+            char ch = sql.charAt(i);
+            if (ch == '\'') {
+                int end = sql.indexOf('\'', i + 1);
+                i = (end < 0) ? length : end;
+                state = 0;
+                continue;
+            }
+            state = transitions[state * ALPHABET_SIZE + toSymbol(ch)];
+            int[] found = outputs[state];
+            if (found.length == 0 || (i + 1 < length && isIdentifierPart(sql.charAt(i + 1)))) {
+                continue;
+            }
+            for (int index : found) {
+                int start = i + 1 - names[index].length();
+                if ((start == 0 || !isIdentifierPart(sql.charAt(start - 1))) && (!ambiguous[index] || sql.regionMatches(true, start, names[index], 0, names[index].length()))) {
+                    result |= flags[index];
+                }
+            }
+            if ((result & EXCLUDED) != 0) {
+                return result;
+            }
+        }
+        return result;
+    }
+
+    private static void putNames(Map<String, Integer> nameFlags, Collection<String> names, int flag) {
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            String trimmed = StringUtils.lowerCase(StringUtils.trimToNull(name));
+            if (trimmed != null) {
+                nameFlags.merge(trimmed, flag, (left, right) -> left | right);
+            }
+        }
+    }
+
+    private static int[] newState() {
+        int[] state = new int[ALPHABET_SIZE];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static int toSymbol(char ch) {
+        if (ch >= 'a' && ch <= 'z') {
+            return ch - 'a';
+        } else if (ch >= 'A' && ch <= 'Z') {
+            return ch - 'A';
+        } else if (ch >= '0' && ch <= '9') {
+            return 26 + (ch - '0');
+        }
+        return switch (ch) {
+            case '_' -> 36;
+            case '$' -> 37;
+            case '.' -> 38;
+            default -> OTHER_SYMBOL;
+        };
+    }
+
+    private static boolean isIdentifierPart(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$';
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy;
+
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import com.yookue.springstarter.p6spy.config.P6spyAutoConfiguration;
+import com.yookue.springstarter.p6spy.support.SwitchableSpyDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Runs statements from thousands of virtual threads through p6spy, and asserts that no carrier thread is pinned
+ * <p>
+ * The data source is wrapped by the starter itself, through {@link com.yookue.springstarter.p6spy.support.DataSourceWrappingPostProcessor},
+ * so the listeners and the appenders are the ones an application gets. Only the pinned events with a frame under p6spy or the starter
+ * are counted. Runs on java 21 or later only, with {@code mvn -P virtual-threads test}
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+@Slf4j
+class VirtualThreadPinningTest {
+    private static final int THREAD_COUNT = 10_000;
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";    // $NON-NLS-1$
+    private static final String[] SPY_PACKAGES = {"com.p6spy.", "com.yookue.springstarter.p6spy."};    // $NON-NLS-1$ // $NON-NLS-2$
+
+    @TempDir
+    private Path tempDir;
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "com.yookue.springstarter.p6spy.appender.RollingFileLogger, com.yookue.springstarter.p6spy.strategy.JsonLineFormat",    // $NON-NLS-1$
+        "com.yookue.springstarter.p6spy.appender.ConsoleLogger, com.yookue.springstarter.p6spy.strategy.CompactSingleLineFormat"    // $NON-NLS-1$
+    })
+    void statementsOnVirtualThreads(String appender, String format) throws Exception {
+        new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(P6spyAutoConfiguration.class))
+            .withBean("dataSource", DataSource.class, VirtualThreadPinningTest::newPool)    // $NON-NLS-1$
+            .withPropertyValues("spring.p6spy.datasource-wrapper.enabled=true", "spring.p6spy.appender=" + appender, "spring.p6spy.log-message-format=" + format,    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$
+                "spring.p6spy.log-file=" + tempDir.resolve("spy.log"), "spring.p6spy.rolling-file.flush-interval=100ms")    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$
+            .run(context -> {
+                Assertions.assertNull(context.getStartupFailure());
+                DataSource dataSource = context.getBean(DataSource.class);
+                Assertions.assertInstanceOf(SwitchableSpyDataSource.class, dataSource);
+                List<RecordedEvent> events = runWithRecording(dataSource);
+                List<RecordedEvent> pinned = events.stream().filter(event -> PINNED_EVENT.equals(event.getEventType().getName()) && isPinnedBySpy(event)).collect(Collectors.toList());
+                pinned.stream().limit(5L).forEach(event -> log.warn("Pinned virtual thread: {}", event));
+                Assertions.assertEquals(0, pinned.size());
+            });
+    }
+
+    /**
+     * Only the pinning under p6spy or the starter counts, the one of the pool or the driver is not ours to fix
+     */
+    private static boolean isPinnedBySpy(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null) {
+            return false;
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            String typeName = (frame.getMethod() == null) ? null : frame.getMethod().getType().getName();
+            if (StringUtils.startsWithAny(typeName, SPY_PACKAGES)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static DataSource newPool() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:pinning;DB_CLOSE_DELAY=-1");    // $NON-NLS-1$
+        config.setMaximumPoolSize(16);
+        return new HikariDataSource(config);
+    }
+
+    private List<RecordedEvent> runWithRecording(DataSource dataSource) throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("create table if not exists t_pinning (id int primary key, name varchar(64))");    // $NON-NLS-1$
+            statement.execute("delete from t_pinning");    // $NON-NLS-1$
+        }
+        Path file = tempDir.resolve("pinning.jfr");    // $NON-NLS-1$
+        try (Recording recording = new Recording()) {
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            ExecutorService executor = newVirtualThreadExecutor();
+            try {
+                List<Future<?>> futures = new ArrayList<>(THREAD_COUNT);
+                for (int i = 0; i < THREAD_COUNT; i++) {
+                    int id = i;
+                    futures.add(executor.submit(() -> {
+                        executeStatements(dataSource, id);
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private void executeStatements(DataSource dataSource, int id) throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement("insert into t_pinning (id, name) values (?, ?)")) {    // $NON-NLS-1$
+                statement.setInt(1, id);
+                statement.setString(2, "name-" + id);    // $NON-NLS-1$
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("select name from t_pinning where id = ?")) {    // $NON-NLS-1$
+                statement.setInt(1, id);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    Assertions.assertTrue(resultSet.next());
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the executor reflectively, so that the test sources still compile on the java baseline of the project
+     */
+    private ExecutorService newVirtualThreadExecutor() throws ReflectiveOperationException {
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);    // $NON-NLS-1$
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.benchmark;
+
+
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import com.yookue.springstarter.p6spy.strategy.CompactSingleLineFormat;
+
+
+/**
+ * Run with {@code mvn -P benchmark test-compile}, then execute the main method on the test classpath
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1)
+@State(Scope.Benchmark)
+public class CompactSingleLineFormatBenchmark {
+    private static final String SHORT_SQL = "select test_name from t_test_table t where t.test_code = 'tab1'";    // $NON-NLS-1$
+
+    private static final String LONG_SQL = "select o.order_id, o.order_code, o.customer_id, o.total_amount, o.created_time, c.customer_name, c.customer_level, "    // $NON-NLS-1$
+        + "a.address_line, a.city, a.postal_code from t_order o inner join t_customer c on c.customer_id = o.customer_id "    // $NON-NLS-1$
+        + "left join t_address a on a.address_id = o.address_id where o.created_time >= '2022-01-01 00:00:00' and o.status in (1, 2, 3, 5, 8) "    // $NON-NLS-1$
+        + "and c.customer_level > 3 order by o.created_time desc, o.order_id asc limit 100 offset 2000";    // $NON-NLS-1$
+
+    private static final String INDENTED_SQL = "\n\t\tselect\n\t\t\to.order_id,\n\t\t\to.order_code,\n\t\t\to.total_amount\r\n"    // $NON-NLS-1$
+        + "\t\tfrom\n\t\t\tt_order o\n\t\t\tinner join t_customer c\n\t\t\t\ton c.customer_id = o.customer_id\r\n"    // $NON-NLS-1$
+        + "\t\twhere\n\t\t\to.status in (1, 2, 3)\n\t\t\tand    c.customer_level   >   3\n\t\torder by\n\t\t\to.created_time desc\n\t";    // $NON-NLS-1$
+
+    private static final String MESSAGE_TEMPLATE = "{connection: %d, elapsed: %d} statement: %s";    // $NON-NLS-1$
+
+    private final CompactSingleLineFormat format = new CompactSingleLineFormat();
+
+    @Param(value = {"short", "long", "indented"})
+    private String shape;
+
+    private String sql;
+
+    @Setup
+    public void setup() {
+        sql = switch (shape) {
+            case "long" -> LONG_SQL;    // $NON-NLS-1$
+            case "indented" -> INDENTED_SQL;    // $NON-NLS-1$
+            default -> SHORT_SQL;
+        };
+    }
+
+    @Benchmark
+    public String regexReplace() {
+        String compact = StringUtils.isBlank(sql) ? null : sql.replaceAll("(\\r?\\n|\\t)+", StringUtils.SPACE).replaceAll("\\s{2,}", StringUtils.SPACE).trim();    // $NON-NLS-1$ // $NON-NLS-2$
+        return String.format(MESSAGE_TEMPLATE, 12, 3L, compact);
+    }
+
+    @Benchmark
+    public String singlePass() {
+        return format.formatMessage(12, null, 3L, "statement", sql, sql, null);    // $NON-NLS-1$
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CompactSingleLineFormatBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.benchmark;
+
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.ClassloaderProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import com.p6spy.engine.spy.P6ModuleManager;
+import com.p6spy.engine.spy.P6SpyOptions;
+import com.p6spy.engine.spy.appender.MessageFormattingStrategy;
+import com.p6spy.engine.spy.appender.P6Logger;
+import com.p6spy.engine.spy.appender.Slf4JLogger;
+import com.p6spy.engine.spy.appender.StdoutLogger;
+import com.yookue.commonplexus.javaseutil.annotation.PropertyAlias;
+import com.yookue.commonplexus.springutil.util.AnnotationUtilsWraps;
+import com.yookue.commonplexus.springutil.util.ClassUtilsWraps;
+import com.yookue.commonplexus.springutil.util.ReflectionUtilsWraps;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import com.yookue.springstarter.p6spy.strategy.CompactSingleLineFormat;
+import com.yookue.springstarter.p6spy.support.SpyOptionsUtils;
+
+
+/**
+ * Run with {@code mvn -P benchmark test-compile}, then execute the main method on the test classpath
+ * <p>
+ * Each fork applies the options once in a fresh jvm, the class loading profiler reports the classes loaded by doing so
+ * <p>
+ * The reflective baseline walks {@link BaselineProperties}, a frozen copy of the fields and the aliases of the properties as they
+ * were before the static mapping, so it writes the same option keys as the old code did
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 10)
+@State(Scope.Benchmark)
+public class SpyOptionsStartupBenchmark {
+    @Benchmark
+    public Object reflectiveReload() {
+        BaselineProperties properties = new BaselineProperties();
+        properties.appender = StdoutLogger.class;
+        properties.dateFormat = "yyyy-MM-dd HH:mm:ss";    // $NON-NLS-1$
+        Map<String, String> options = P6SpyOptions.getActiveInstance().getDefaults();
+        ReflectionUtils.doWithFields(BaselineProperties.class, field -> {
+            String fieldName = field.getName();
+            if (StringUtils.equalsIgnoreCase(fieldName, "enabled")) {    // $NON-NLS-1$
+                return;
+            }
+            String fieldValue = null;
+            if (ClassUtils.isAssignable(Boolean.class, field.getType())) {
+                fieldValue = BooleanUtils.toStringTrueFalse(ReflectionUtilsWraps.getFieldAs(field, true, properties, Boolean.class));
+            } else if (ClassUtils.isAssignable(String.class, field.getType())) {
+                fieldValue = ReflectionUtilsWraps.getFieldAs(field, true, properties, String.class);
+            } else if (ClassUtils.isAssignable(Class.class, field.getType())) {
+                fieldValue = ClassUtilsWraps.getQualifiedName(ReflectionUtilsWraps.getFieldAs(field, true, properties, Class.class));
+            }
+            if (StringUtils.isBlank(fieldValue)) {
+                return;
+            }
+            String fieldAlias = AnnotationUtilsWraps.getAnnotationAttributeAsString(field, PropertyAlias.class, "value");    // $NON-NLS-1$
+            options.put(StringUtils.defaultIfBlank(fieldAlias, fieldName), fieldValue);
+        });
+        P6SpyOptions.getActiveInstance().load(options);
+        P6ModuleManager.getInstance().reload();
+        return P6ModuleManager.getInstance();
+    }
+
+    @Benchmark
+    public Object staticMapping() {
+        SpyOptionsUtils.applyOptions(newProperties());
+        return P6ModuleManager.getInstance();
+    }
+
+    private static P6spyProperties newProperties() {
+        P6spyProperties properties = new P6spyProperties();
+        properties.setAppender(StdoutLogger.class);
+        properties.setDateFormat("yyyy-MM-dd HH:mm:ss");    // $NON-NLS-1$
+        return properties;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SpyOptionsStartupBenchmark.class.getSimpleName()).addProfiler(ClassloaderProfiler.class).build()).run();
+    }
+
+
+    @SuppressWarnings("FieldMayBeFinal")
+    private static final class BaselineProperties {
+        private Boolean enabled = true;
+
+        @PropertyAlias(value = P6SpyOptions.AUTOFLUSH)
+        private Boolean autoFlush;
+
+        @PropertyAlias(value = P6SpyOptions.DRIVERLIST)
+        private String driverList;
+
+        @PropertyAlias(value = P6SpyOptions.LOGFILE)
+        private String logFile;
+
+        private Class<? extends MessageFormattingStrategy> logMessageFormat = CompactSingleLineFormat.class;
+
+        private Boolean append = true;
+
+        @PropertyAlias(value = P6SpyOptions.DATEFORMAT)
+        private String dateFormat;
+
+        private Class<? extends P6Logger> appender = Slf4JLogger.class;
+
+        @PropertyAlias(value = P6SpyOptions.MODULELIST)
+        private String moduleList;
+
+        @PropertyAlias(value = P6SpyOptions.STACKTRACE)
+        private Boolean stackTrace;
+
+        @PropertyAlias(value = P6SpyOptions.STACKTRACECLASS)
+        private Class<?> stackTraceClass;
+
+        @PropertyAlias(value = P6SpyOptions.RELOADPROPERTIES)
+        private Boolean reloadProperties;
+
+        @PropertyAlias(value = P6SpyOptions.RELOADPROPERTIESINTERVAL)
+        private Integer reloadPropertiesInterval;
+
+        @PropertyAlias(value = P6SpyOptions.JNDICONTEXTFACTORY)
+        private String jndiContextFactory;
+
+        @PropertyAlias(value = P6SpyOptions.JNDICONTEXTPROVIDERURL)
+        private String jndiContextProviderUrl;
+
+        @PropertyAlias(value = P6SpyOptions.JNDICONTEXTCUSTOM)
+        private String jndiContextCustom;
+
+        @PropertyAlias(value = P6SpyOptions.REALDATASOURCE)
+        private String realDatasource;
+
+        @PropertyAlias(value = P6SpyOptions.REALDATASOURCECLASS)
+        private Class<? extends DataSource> realDatasourceClass;
+
+        @PropertyAlias(value = P6SpyOptions.REALDATASOURCEPROPERTIES)
+        private String realDatasourceProperties;
+
+        private String customLogMessageFormat;
+
+        private String databaseDialectDateFormat;
+
+        private String databaseDialectTimestampFormat;
+
+        private String databaseDialectBooleanFormat;
+
+        private Boolean jmx = true;
+
+        private String jmxPrefix;
+    }
+}
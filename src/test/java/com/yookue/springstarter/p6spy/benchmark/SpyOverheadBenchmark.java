@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.benchmark;
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import com.yookue.springstarter.p6spy.config.P6spyAutoConfiguration;
+
+
+/**
+ * Run with {@code mvn -P benchmark test-compile}, then execute the main method on the test classpath, optionally with the maximum
+ * number of threads as the argument
+ * <p>
+ * Each setup boots a Spring Boot application with a Hikari pool on an embedded H2 database, and runs point queries by primary key,
+ * one statement per operation, from 1 up to the maximum number of threads
+ * <ul>
+ *     <li>{@code raw}: the starter is disabled, the pool is used directly</li>
+ *     <li>{@code slf4j}: the pool is wrapped, {@code CompactSingleLineFormat} lines are written by {@code Slf4JLogger}</li>
+ *     <li>{@code file}: the pool is wrapped, {@code CompactSingleLineFormat} lines are written by {@code RollingFileLogger}</li>
+ *     <li>{@code filtered}: the pool is wrapped, every statement is filtered out by {@code minElapsedMs}</li>
+ * </ul>
+ * The throughput, the percentiles of the sampled latency, and {@code gc.alloc.rate.norm} are all per statement
+ */
+@BenchmarkMode(value = {Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dorg.springframework.boot.logging.LoggingSystem=none", "-Dorg.slf4j.simpleLogger.logFile=target/spy-overhead-slf4j.log"})    // $NON-NLS-1$ // $NON-NLS-2$
+@State(Scope.Benchmark)
+public class SpyOverheadBenchmark {
+    private static final int ROW_COUNT = 10_000;
+    private static final String SELECT_SQL = "select name, amount from t_spy_overhead where id = ?";    // $NON-NLS-1$
+
+    @Param(value = {"raw", "slf4j", "file", "filtered"})
+    private String setup;
+
+    private ConfigurableApplicationContext context;
+
+    private DataSource dataSource;
+
+    @Setup(value = Level.Trial)
+    public void setup() throws SQLException {
+        context = new SpringApplicationBuilder(BenchmarkApplication.class).web(WebApplicationType.NONE).bannerMode(Banner.Mode.OFF).logStartupInfo(false).run(getArguments());
+        dataSource = context.getBean(DataSource.class);
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table if not exists t_spy_overhead (id int primary key, name varchar(64), amount decimal(12, 2))");    // $NON-NLS-1$
+                statement.execute("delete from t_spy_overhead");    // $NON-NLS-1$
+            }
+            try (PreparedStatement statement = connection.prepareStatement("insert into t_spy_overhead (id, name, amount) values (?, ?, ?)")) {    // $NON-NLS-1$
+                for (int i = 0; i < ROW_COUNT; i++) {
+                    statement.setInt(1, i);
+                    statement.setString(2, "name-" + i);    // $NON-NLS-1$
+                    statement.setInt(3, i * 3);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+
+    @TearDown(value = Level.Trial)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public String pointSelect() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(SELECT_SQL)) {
+            statement.setInt(1, ThreadLocalRandom.current().nextInt(ROW_COUNT));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
+
+    private String[] getArguments() {
+        String[] common = {
+            "--spring.config.name=spy-overhead-benchmark",    // $NON-NLS-1$
+            "--spring.datasource.url=jdbc:h2:mem:spy_overhead;DB_CLOSE_DELAY=-1",    // $NON-NLS-1$
+            "--spring.datasource.hikari.maximum-pool-size=64",    // $NON-NLS-1$
+            "--spring.p6spy.datasource-wrapper.enabled=true",    // $NON-NLS-1$
+            "--spring.p6spy.reload-properties=false",    // $NON-NLS-1$
+            "--spring.p6spy.log-message-format=com.yookue.springstarter.p6spy.strategy.CompactSingleLineFormat"    // $NON-NLS-1$
+        };
+        String[] specific = switch (setup) {
+            case "raw" -> new String[] {"--spring.p6spy.enabled=false"};    // $NON-NLS-1$ // $NON-NLS-2$
+            case "file" -> new String[] {"--spring.p6spy.appender=com.yookue.springstarter.p6spy.appender.RollingFileLogger", "--spring.p6spy.log-file=target/spy-overhead.log"};    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$
+            case "filtered" -> new String[] {"--spring.p6spy.appender=com.p6spy.engine.spy.appender.Slf4JLogger", "--spring.p6spy.min-elapsed-ms=60000"};    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$
+            default -> new String[] {"--spring.p6spy.appender=com.p6spy.engine.spy.appender.Slf4JLogger"};    // $NON-NLS-1$
+        };
+        String[] arguments = new String[common.length + specific.length];
+        System.arraycopy(common, 0, arguments, 0, common.length);
+        System.arraycopy(specific, 0, arguments, common.length, specific.length);
+        return arguments;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            new Runner(new OptionsBuilder().include(SpyOverheadBenchmark.class.getSimpleName()).threads(threads).addProfiler(GCProfiler.class).build()).run();
+            if (threads >= maxThreads) {
+                break;
+            }
+        }
+    }
+
+
+    @Configuration(proxyBeanMethods = false)
+    @ImportAutoConfiguration(value = {DataSourceAutoConfiguration.class, P6spyAutoConfiguration.class})
+    static class BenchmarkApplication {
+    }
+}
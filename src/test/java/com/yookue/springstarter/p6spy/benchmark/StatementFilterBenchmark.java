@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.p6spy.benchmark;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import com.yookue.springstarter.p6spy.property.P6spyProperties;
+import com.yookue.springstarter.p6spy.support.StatementFilter;
+
+
+/**
+ * Run with {@code mvn -P benchmark test-compile}, then execute the main method on the test classpath
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1)
+@State(Scope.Benchmark)
+public class StatementFilterBenchmark {
+    private static final String SQL = "select o.order_id, o.order_code, o.customer_id, o.total_amount, c.customer_name, a.city "    // $NON-NLS-1$
+        + "from t_order o inner join t_customer c on c.customer_id = o.customer_id left join t_address a on a.address_id = o.address_id "    // $NON-NLS-1$
+        + "where o.created_time >= ? and o.status in (?, ?, ?) and c.customer_level > ? order by o.created_time desc limit 100";    // $NON-NLS-1$
+
+    @Param(value = {"1", "10", "100", "1000"})
+    private int rules;
+
+    private Pattern pattern;
+
+    private StatementFilter filter;
+
+    @Setup
+    public void setup() {
+        List<String> excludeTables = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) {
+            excludeTables.add("t_audit_" + i);    // $NON-NLS-1$
+        }
+        pattern = Pattern.compile("^(?!.*\\b(" + String.join("|", excludeTables) + ")\\b).*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$
+        P6spyProperties.Filter properties = new P6spyProperties.Filter();
+        properties.setExcludeTables(excludeTables);
+        filter = StatementFilter.of(properties);
+    }
+
+    @Benchmark
+    public boolean regexPattern() {
+        return pattern.matcher(SQL).matches();
+    }
+
+    @Benchmark
+    public boolean compiledFilter() {
+        return filter.isStatementAccepted(SQL);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StatementFilterBenchmark.class.getSimpleName()).build()).run();
+    }
+}